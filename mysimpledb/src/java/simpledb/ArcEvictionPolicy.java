@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The Adaptive Replacement Cache of Megiddo and Modha.  Resident pages are
+ * split between T1, pages hit once since they were read, and T2, pages hit
+ * more than once; each has a ghost list (B1, B2) remembering the ids of the
+ * pages recently evicted from it.  A request for a page in B1 shows T1 was
+ * too small and grows its target size p; one in B2 shrinks it.  Pages read
+ * once by a scan stay in T1, so a scan cannot push the frequently used
+ * pages out of T2, and the split adapts to the workload without tuning.
+ */
+public class ArcEvictionPolicy implements EvictionPolicy {
+
+    private int capacity = 1;
+    // target size of t1
+    private int p;
+    // all four lists run from least to most recently used
+    private final LinkedHashMap<PageId, Boolean> t1 = new LinkedHashMap<PageId, Boolean>();
+    private final LinkedHashMap<PageId, Boolean> t2 = new LinkedHashMap<PageId, Boolean>();
+    private final LinkedHashMap<PageId, Boolean> b1 = new LinkedHashMap<PageId, Boolean>();
+    private final LinkedHashMap<PageId, Boolean> b2 = new LinkedHashMap<PageId, Boolean>();
+    // the incoming page chooseVictim already adapted p for
+    private PageId adapted;
+
+    public void setCapacity(int numPages) {
+        capacity = Math.max(1, numPages);
+        p = Math.min(p, capacity);
+        trimGhosts();
+    }
+
+    public void pageHit(PageId pid) {
+        if (t1.remove(pid) != null || t2.remove(pid) != null) {
+            t2.put(pid, Boolean.TRUE);
+        }
+    }
+
+    public void pageAdded(PageId pid) {
+        if (!pid.equals(adapted)) {
+            adapt(pid);
+        }
+        adapted = null;
+        if (b1.remove(pid) != null || b2.remove(pid) != null) {
+            t2.put(pid, Boolean.TRUE);
+        } else {
+            t1.put(pid, Boolean.TRUE);
+        }
+        trimGhosts();
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (t1.remove(pid) == null) {
+            t2.remove(pid);
+        }
+    }
+
+    /**
+     * The page goes back from its ghost list to the list it was chosen
+     * from, without adapting p, which only requests for pages do.
+     */
+    public void victimKept(PageId pid) {
+        if (b2.remove(pid) != null) {
+            t2.put(pid, Boolean.TRUE);
+        } else {
+            b1.remove(pid);
+            t1.put(pid, Boolean.TRUE);
+        }
+    }
+
+    public PageId chooseVictim(PageId incoming) {
+        // the pool asks again for the same incoming page when a victim is
+        // kept; its request adapts p once
+        if (incoming == null || !incoming.equals(adapted)) {
+            adapt(incoming);
+            adapted = incoming;
+        }
+        if (t1.isEmpty() && t2.isEmpty()) {
+            return null;
+        }
+        boolean inB2 = b2.containsKey(incoming);
+        if (!t1.isEmpty() && (t1.size() > p || (inB2 && t1.size() == p) || t2.isEmpty())) {
+            PageId victim = removeFirst(t1);
+            b1.put(victim, Boolean.TRUE);
+            return victim;
+        }
+        PageId victim = removeFirst(t2);
+        b2.put(victim, Boolean.TRUE);
+        return victim;
+    }
+
+    /**
+     * Moves p towards the list whose ghost list holds pid, if either does.
+     */
+    private void adapt(PageId pid) {
+        if (b1.containsKey(pid)) {
+            p = Math.min(capacity, p + Math.max(1, b2.size() / b1.size()));
+        } else if (b2.containsKey(pid)) {
+            p = Math.max(0, p - Math.max(1, b1.size() / b2.size()));
+        }
+    }
+
+    /**
+     * Keeps |T1| + |B1| within the capacity and all four lists within
+     * twice the capacity.
+     */
+    private void trimGhosts() {
+        while (!b1.isEmpty() && t1.size() + b1.size() > capacity) {
+            removeFirst(b1);
+        }
+        while (!b2.isEmpty() && t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+            removeFirst(b2);
+        }
+    }
+
+    private static PageId removeFirst(LinkedHashMap<PageId, Boolean> list) {
+        Iterator<PageId> it = list.keySet().iterator();
+        PageId first = it.next();
+        it.remove();
+        return first;
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+/**
+ * A BufferPartition is the share of a BufferPool given to one table, with
+ * its own eviction policy, a cap on the fraction of the pool it may fill
+ * (its quota) and a priority.  Pages of tables without a partition of
+ * their own belong to the pool's default partition.
+ * <p/>
+ * A miss on a table whose partition has reached its quota evicts a page
+ * of the same partition.  Other misses evict from the default partition,
+ * then from the largest capped partition; pages of resident (high
+ * priority) partitions are evicted only when no other page can be, so
+ * small lookup tables marked resident stay cached whatever else is read.
+ * <p/>
+ * Each partition counts the requests for its pages that hit and miss, to
+ * tune the split.
+ *
+ * @see BufferPool#setTablePartition
+ */
+public class BufferPartition {
+
+    final EvictionPolicy policy;
+    private volatile double quota;
+    private volatile boolean resident;
+    // pages known to policy; guarded by the BufferPool's lock
+    int numPages;
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+
+    BufferPartition(EvictionPolicy policy, double quota, boolean resident) {
+        this.policy = policy;
+        this.quota = quota;
+        this.resident = resident;
+    }
+
+    /**
+     * Changes the quota and priority of the partition.  Called holding the
+     * BufferPool's lock.
+     */
+    void set(double quota, boolean resident, int poolPages) {
+        this.quota = quota;
+        this.resident = resident;
+        setPoolPages(poolPages);
+    }
+
+    /**
+     * Tells the policy how many pages the partition may hold in a pool of
+     * poolPages pages.  Called holding the BufferPool's lock.
+     */
+    void setPoolPages(int poolPages) {
+        policy.setCapacity(maxPages(poolPages));
+    }
+
+    /**
+     * Returns the number of pages the partition may hold in a pool of
+     * poolPages pages.
+     */
+    int maxPages(int poolPages) {
+        return Math.max(1, (int) (quota * poolPages));
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Returns the fraction of the pool the partition may fill.
+     */
+    public double getQuota() {
+        return quota;
+    }
+
+    /**
+     * Returns true if the partition's pages are evicted only when no other
+     * page can be.
+     */
+    public boolean isResident() {
+        return resident;
+    }
+
+    /**
+     * Returns the number of pages of the partition in the pool, not
+     * counting those read by large scans through a ScanRing.
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Returns the number of requests for pages of the partition that found
+     * the page cached.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests for pages of the partition that read
+     * the page from disk.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of requests for pages of the partition that hit,
+     * 0 if there were none.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Sets the hit and miss counts back to zero.
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+}
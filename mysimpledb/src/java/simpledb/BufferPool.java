@@ -1,7 +1,23 @@
 package simpledb;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -10,9 +26,90 @@ import java.util.ArrayList;
  * <p/>
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
- * locks to read/write the page.
+ * locks to read/write the page.  Page locks are kept by a
+ * {@link LockManager}: getPage takes a shared lock for READ_ONLY and an
+ * exclusive one for READ_WRITE, waiting if another transaction holds a
+ * conflicting lock, and transactionComplete releases them all (strict
+ * two-phase locking).  Each page lock comes with an intention lock on the
+ * page's table, and a transaction holding many page locks on one table
+ * has them escalated to a single table lock.  Requests made with a null
+ * TransactionId take no lock.
+ * <p/>
+ * Read-only transactions may instead read a snapshot (see
+ * {@link #beginSnapshot}): they take no locks, so they neither wait for
+ * writers nor hold them up, and see the pages as committed when they
+ * began.  The committed versions they need are kept by a
+ * {@link VersionStore} until no snapshot needs them.  Short lookups may
+ * also read a page optimistically with {@link #readOptimistic}: without a
+ * lock, validating afterwards that no writer got at the page meanwhile.
+ * <p/>
+ * Cached pages are kept in a hash table keyed by PageId, so finding a page
+ * costs the same whatever the size of the pool.  When the pool is full, an
+ * {@link EvictionPolicy} chosen at construction picks the page to evict.
+ * Scans of tables larger than the pool (or a set fraction of it) read
+ * their pages through a {@link ScanRing} instead, so that they recycle a
+ * few frames of their own rather than evict the working set.
+ * <p/>
+ * By default pages are read into frames of a {@link FrameArena} allocated
+ * off the Java heap when the pool is created and reused as pages come and
+ * go, so a large pool neither adds to the heap the garbage collector scans
+ * nor allocates a page image per miss.
+ * <p/>
+ * Any number of threads may share the pool.  The page table is split into
+ * {@link #STRIPES} independently locked stripes, and looking up a cached
+ * page takes no lock at all: a hit is only noted on its frame, and passed
+ * on to the eviction policy the next time a miss needs a frame.  The
+ * policy, the free frames and the scan rings are guarded by one lock,
+ * held only for bookkeeping; page reads and the writes of evicted pages
+ * are done holding just the latch of the frame concerned, so a thread
+ * waiting for a page does not hold up threads working on other pages.
+ * <p/>
+ * A page returned by getPage may be evicted as soon as it is returned; its
+ * image is then copied out of its frame, so the caller can go on reading
+ * it, but only as a stale copy.  Callers that read or modify a page in
+ * place pin it with {@link #pinPage} and release it with
+ * {@link #unpinPage}: pinned pages are never evicted, and their frames
+ * never reused, until the last pin is removed.
+ * <p/>
+ * Once more than a set fraction of the pool is dirty, a background writer
+ * thread writes dirty pages out, in table and page order so that runs of
+ * neighbouring pages go to disk in one write, until the dirty fraction is
+ * back under a lower mark (see {@link #setDirtyWatermarks}).  Most pages
+ * evicted are then clean, and misses seldom wait for a write.  Every page
+ * write follows the write-ahead rule: the page's UPDATE record is appended
+ * to the {@link LogFile} and the log forced before the page is written.
+ * <p/>
+ * Tables may be given partitions of their own (see
+ * {@link #setTablePartition}), with their own eviction policy, a cap on
+ * the share of the pool they fill and a priority, so that a large table
+ * cannot push small, latency-critical ones out.  Every partition counts
+ * its hits and misses.
+ * <p/>
+ * The pool also counts hits, misses, evictions and pages written, and
+ * keeps histograms of read and write latencies, in counters cheap enough
+ * to leave on; {@link BufferPoolMetrics} publishes them through JMX.
+ * <p/>
+ * The pool can be resized while in use with {@link #setMaxPages}; it keeps
+ * its cached pages when it grows, and evicts only the surplus, chosen by
+ * the eviction policy, when it shrinks.
+ * <p/>
+ * The ids of the cached pages, with how often each was hit, can be saved
+ * to a snapshot file, periodically if wanted, and read back after a
+ * restart to fill the pool with the same pages before queries ask for
+ * them (see {@link #warmStart}).
+ * <p/>
+ * Besides the page table and the frame latches, the mutable state is
+ * guarded as follows.  poolLock guards the eviction policies and
+ * partitions, the arena and framesInFlight, ringPages, the background
+ * writer thread, the snapshot timer and prefetchers, and the hits and
+ * misses of removed partitions; maxPages and frameWaiters are written
+ * holding it, and volatile so they can be read without it.  The dirty
+ * watermarks and the ring threshold are volatile.  The pool's own monitor
+ * serializes writes of dirty pages, flushes and rollbacks, and is taken
+ * before LogFile's.  The set of dirty pages, the counters and the
+ * histograms are concurrent and need no lock.
  *
- * @Threadsafe, all fields are final
+ * @Threadsafe
  */
 public class BufferPool {
     /**
@@ -28,18 +125,172 @@ public class BufferPool {
      * constructor instead.
      */
     public static final int DEFAULT_PAGES = 50;
-    private ArrayList<Page> cachedPages;
-    private ArrayList<Long> timeSinceUse;
-    private int maxPages;
+
+    /**
+     * Default fraction of the pool above which a scan reads through a
+     * ScanRing: only tables that do not fit in the pool are scanned through
+     * a ring, so smaller ones stay cached for the next scan.
+     */
+    public static final double DEFAULT_RING_THRESHOLD = 1.0;
+
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Maximum number of frames in a ScanRing.
+     */
+    public static final int RING_PAGES = 32;
+
+    /**
+     * Number of independently locked stripes of the page table.
+     */
+    public static final int STRIPES = 64;
+
+    /**
+     * Default fraction of the pool that may be dirty before the background
+     * writer starts.
+     */
+    public static final double DEFAULT_DIRTY_HIGH = 0.25;
+
+    /**
+     * Default fraction of the pool the background writer leaves dirty.
+     */
+    public static final double DEFAULT_DIRTY_LOW = 0.10;
+
+    /**
+     * Maximum number of pages the background writer writes per log force.
+     */
+    public static final int WRITE_BATCH = 64;
+
+    /**
+     * Longest time a miss waits for a page to be unpinned when every page
+     * in the pool is pinned, before it fails.
+     */
+    public static final long MAX_FRAME_WAIT_MILLIS = 10000;
+
+    /**
+     * System property naming the page set snapshot file.  If it is set, the
+     * pool reads the pages listed in the snapshot back in once the catalog
+     * is loaded, and saves its page set there periodically (see
+     * {@link #warmStart}).
+     */
+    public static final String SNAPSHOT_PROPERTY = "simpledb.PoolSnapshot";
+
+    /**
+     * Default interval between two saves of the page set, in milliseconds.
+     */
+    public static final long DEFAULT_SNAPSHOT_PERIOD_MILLIS = 60000;
+
+    /**
+     * Number of threads reading in the pages of a snapshot at startup.
+     */
+    public static final int PREFETCH_THREADS = 4;
+
+    /**
+     * Number of times readOptimistic reads a page without a lock before it
+     * takes one.
+     */
+    public static final int OPTIMISTIC_RETRIES = 3;
+
+    // orders pages by table, then page number
+    private static final Comparator<PageId> PAGE_ORDER = new Comparator<PageId>() {
+        public int compare(PageId a, PageId b) {
+            if (a.getTableId() != b.getTableId()) {
+                return a.getTableId() < b.getTableId() ? -1 : 1;
+            }
+            return a.pageNumber() - b.pageNumber();
+        }
+    };
+
+    // the page table, from page id to the frame holding the page or having
+    // it read in.  Each of the map's segments is a stripe; lookups do not
+    // lock.
+    private final ConcurrentHashMap<PageId, FrameArena.Frame> pages;
+    // guards arena, policies, ringPages and the other fields said to be
+    // guarded by poolLock; never held during I/O
+    private final Object poolLock = new Object();
+    private final FrameArena arena;
+    // partition of the tables without one of their own, and the partitions
+    // of the others, by table id; guarded by poolLock
+    private final BufferPartition defaultPartition;
+    private final HashMap<Integer, BufferPartition> partitions;
+    // guarded by poolLock for writes
+    private volatile int maxPages;
+    // pages read through a ScanRing and still owned by it; they are not
+    // known to the policy
+    private final HashMap<PageId, ScanRing> ringPages;
+    // pages hit since the policy was last told, at most once each
+    private final ConcurrentLinkedQueue<PageId> hits;
+    // frames taken for a read and not yet holding a page the policy or a
+    // ring knows of; guarded by poolLock
+    private int framesInFlight;
+    // threads waiting in takeFrame for a frame; written under poolLock
+    private volatile int frameWaiters;
+    private volatile double ringThreshold = DEFAULT_RING_THRESHOLD;
+    // pages dirtied through the pool and not written since, and their count
+    private final Set<PageId> dirtyPages;
+    private final AtomicInteger numDirty;
+    private volatile double dirtyHigh = DEFAULT_DIRTY_HIGH;
+    private volatile double dirtyLow = DEFAULT_DIRTY_LOW;
+    // the background writer, while it runs; guarded by poolLock
+    private Thread writer;
+    private final LockManager lockManager = new LockManager();
+    private final VersionStore versions = new VersionStore();
+    // statistics, see BufferPoolMXBean
+    // hits and misses are counted by partition; these hold those of
+    // partitions since removed.  Guarded by poolLock.
+    private long retiredHits;
+    private long retiredMisses;
+    private final StripedCounter evictionCount = new StripedCounter();
+    private final StripedCounter flushCount = new StripedCounter();
+    private final StripedCounter optimisticReads = new StripedCounter();
+    private final StripedCounter optimisticFallbacks = new StripedCounter();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    // periodic saves of the page set, if started; guarded by poolLock
+    private Timer snapshotTimer;
+    // threads reading in the pages of a snapshot; guarded by poolLock
+    private final ArrayList<Thread> prefetchers = new ArrayList<Thread>();
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts the
+     * least recently used page when full.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     */
+    public BufferPool(int numPages) {
+        this(numPages, new LruEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and uses policy
+     * to choose which page to evict when full.  policy must be a new
+     * instance, not shared with another pool.
      *
      * @param numPages maximum number of pages in this buffer pool.
+     * @param policy   the eviction policy, e.g. a
+     *                 {@link TwoQueueEvictionPolicy} or an
+     *                 {@link ArcEvictionPolicy} to keep large scans from
+     *                 flushing frequently used pages
      */
-    public BufferPool(int num) {
-        cachedPages = new ArrayList<Page>();
-        timeSinceUse = new ArrayList<Long>();
-        maxPages = num;
+    public BufferPool(int numPages, EvictionPolicy policy) {
+        this(numPages, policy, true);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, uses policy to
+     * choose which page to evict when full, and keeps page images in frames
+     * off the Java heap if offHeap is true, or in heap arrays allocated for
+     * each page read otherwise.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy, boolean offHeap) {
+        pages = new ConcurrentHashMap<PageId, FrameArena.Frame>(numPages, 0.75f, STRIPES);
+        ringPages = new HashMap<PageId, ScanRing>();
+        hits = new ConcurrentLinkedQueue<PageId>();
+        dirtyPages = Collections.newSetFromMap(new ConcurrentHashMap<PageId, Boolean>());
+        numDirty = new AtomicInteger();
+        arena = new FrameArena(numPages, pageSize, offHeap);
+        defaultPartition = new BufferPartition(policy, 1.0, false);
+        partitions = new HashMap<Integer, BufferPartition>();
+        maxPages = numPages;
+        defaultPartition.setPoolPages(numPages);
     }
 
     public static int getPageSize() {
@@ -68,22 +319,1075 @@ public class BufferPool {
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
-    	for (int i = 0; i<cachedPages.size();i++){
-    		if (cachedPages.get(i).getId().equals(pid)){
-    			timeSinceUse.set(i, (long) 0);
-    			return cachedPages.get(i);
-    		}
-    	}
-        // If page not in BufferPool
-    	if (cachedPages.size() >= maxPages){
-        	evictPage();
-        }
-    	HeapPage p = (HeapPage) Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-    	cachedPages.add(p);
-    	timeSinceUse.add(System.currentTimeMillis());
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieves the specified page like {@link #getPage(TransactionId,
+     * PageId, Permissions)}, but if it has to be read from disk it goes into
+     * ring, taking the frame of the oldest page of the ring once the ring is
+     * full.  Hits on cached pages do not count as uses for the eviction
+     * policy.
+     *
+     * @param ring the ring of the scan reading the page, or null to read the
+     *             page into the pool as usual
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        long snapshot = lock(tid, pid, perm);
+        Page p = fetch(pid, ring);
+        return snapshot < 0 ? p : versions.read(pid, snapshot, p);
+    }
+
+    /**
+     * Reads the specified page with reader, optimistically: without taking
+     * a lock, checking afterwards that no transaction was allowed to write
+     * the page meanwhile (see {@link LockManager#tryOptimisticRead}).  If
+     * one was, or holds an exclusive lock on it, the read is retried, up to
+     * OPTIMISTIC_RETRIES times, then done under a shared lock as getPage
+     * would.  Transactions reading a snapshot read their version.
+     * <p/>
+     * An optimistic read leaves tid with no lock on the page, so reading
+     * the page again may give a newer committed version.  It suits short
+     * lookups that read a page once, for which taking and releasing the
+     * locks would cost more than the read.
+     *
+     * @return what reader returned for the page
+     */
+    public <T> T readOptimistic(TransactionId tid, PageId pid, PageReader<T> reader)
+            throws TransactionAbortedException, DbException {
+        if (tid == null || versions.snapshotOf(tid) < 0) {
+            for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+                long stamp = lockManager.tryOptimisticRead(pid);
+                if (stamp < 0) {
+                    break;
+                }
+                T result;
+                try {
+                    result = reader.read(fetch(pid, null));
+                } catch (RuntimeException e) {
+                    // a page changing under the reader may look corrupt
+                    if (lockManager.validate(pid, stamp)) {
+                        throw e;
+                    }
+                    continue;
+                } catch (DbException e) {
+                    if (lockManager.validate(pid, stamp)) {
+                        throw e;
+                    }
+                    continue;
+                }
+                if (lockManager.validate(pid, stamp)) {
+                    optimisticReads.increment();
+                    return result;
+                }
+            }
+            optimisticFallbacks.increment();
+        }
+        return reader.read(getPage(tid, pid, Permissions.READ_ONLY));
+    }
+
+    /**
+     * Takes the lock tid needs on pid for perm, unless tid reads a snapshot,
+     * and returns tid's snapshot timestamp, -1 if it has none.
+     *
+     * @throws DbException if tid reads a snapshot and perm is READ_WRITE
+     */
+    private long lock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        if (tid == null) {
+            return -1;
+        }
+        long snapshot = versions.snapshotOf(tid);
+        if (snapshot < 0) {
+            lockManager.acquire(tid, pid, perm == Permissions.READ_WRITE);
+        } else if (perm == Permissions.READ_WRITE) {
+            throw new DbException("read-only transaction " + tid.getId() + " cannot write " + pid);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the cached page pid, reading it into the pool (or ring) if it
+     * is not cached.
+     */
+    private Page fetch(PageId pid, ScanRing ring) throws DbException {
+        while (true) {
+            FrameArena.Frame f = pages.get(pid);
+            if (f == null) {
+                Page p = load(pid, ring);
+                if (p != null) {
+                    return p;
+                }
+                // another thread started reading the page first
+                continue;
+            }
+            Page p = f.page;
+            if (p == null) {
+                p = f.awaitPage();
+            }
+            if (p != null && p.getId().equals(pid)) {
+                f.partition.recordHit();
+                if (ring == null && !f.hitPending) {
+                    f.hitPending = true;
+                    hits.offer(pid);
+                }
+                return p;
+            }
+            // the page was evicted while we looked it up
+        }
+    }
+
+    /**
+     * Retrieves the specified page like {@link #getPage(TransactionId,
+     * PageId, Permissions)} and pins it: the page stays in the pool, in its
+     * frame, until it is unpinned, so its contents can be read in place for
+     * as long as it is pinned.  Every pin must be matched by a call to
+     * {@link #unpinPage}.  A page may be pinned several times, by one or
+     * several threads; pinned pages are never evicted.
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        return pinPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieves and pins the specified page, reading it into ring if it is
+     * not cached, see {@link #getPage(TransactionId, PageId, Permissions,
+     * ScanRing)}.
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        long snapshot = lock(tid, pid, perm);
+        while (true) {
+            Page p = fetch(pid, ring);
+            FrameArena.Frame f = pages.get(pid);
+            if (f != null && f.pin(p)) {
+                // a snapshot's version is a copy, but the pin is taken on
+                // the cached page so unpinPage matches it
+                return snapshot < 0 ? p : versions.read(pid, snapshot, p);
+            }
+            // evicted before it could be pinned
+        }
+    }
+
+    /**
+     * Removes a pin taken with pinPage.  Once the last pin is removed the
+     * page may be evicted, and must not be used by the caller any more.
+     *
+     * @throws IllegalArgumentException if the page is not pinned
+     */
+    public void unpinPage(PageId pid) {
+        FrameArena.Frame f = pages.get(pid);
+        if (f == null || f.pinCount() == 0) {
+            throw new IllegalArgumentException("Page is not pinned.");
+        }
+        unpin(f);
+    }
+
+    /**
+     * Removes a pin from f, waking threads waiting for a frame if it was the
+     * last.
+     */
+    private void unpin(FrameArena.Frame f) {
+        if (f.unpin() == 0 && frameWaiters > 0) {
+            synchronized (poolLock) {
+                poolLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pins on the specified page, 0 if it is not
+     * cached.
+     */
+    public int getPinCount(PageId pid) {
+        FrameArena.Frame f = pages.get(pid);
+        return f == null ? 0 : f.pinCount();
+    }
+
+    /**
+     * Reads pid into a free or evicted frame and enters it in the page
+     * table.  Returns null if another thread entered pid first.
+     */
+    private Page load(PageId pid, ScanRing ring) throws DbException {
+        return load(takeFrame(pid, ring), pid, ring, 1);
+    }
+
+    /**
+     * Reads pid into f, a frame taken for it, as load does, and gives the
+     * page the specified heat.
+     */
+    private Page load(FrameArena.Frame f, PageId pid, ScanRing ring, int heat) throws DbException {
+        f.startRead();
+        if (pages.putIfAbsent(pid, f) != null) {
+            f.finish(null);
+            freeFrame(f);
+            return null;
+        }
+        Page p = null;
+        long start = System.nanoTime();
+        try {
+            p = readPage(pid, f.buffer);
+        } finally {
+            if (p == null) {
+                pages.remove(pid, f);
+                f.finish(null);
+                freeFrame(f);
+            }
+        }
+        if (p == null) {
+            throw new DbException("Could not read page " + pid.pageNumber() + " of table " + pid.getTableId());
+        }
+        readLatency.record(System.nanoTime() - start);
+        synchronized (poolLock) {
+            f.partition = partitionOf(pid);
+            f.partition.recordMiss();
+            if (ring != null) {
+                ring.add(pid);
+                ringPages.put(pid, ring);
+            } else {
+                pageAdded(f, pid);
+            }
+            f.heat = heat;
+            framesInFlight--;
+            poolLock.notifyAll();
+        }
+        f.finish(p);
         return p;
     }
 
+    /**
+     * Returns a frame to read incoming into: the frame of the oldest page of
+     * ring if the ring is full, else the frame of a page of incoming's
+     * partition if the partition is at its quota, else a free frame, else
+     * the frame of an unpinned page evicted to make room.  If every frame is being read
+     * into or pinned by other threads, waits for a read to finish or a page
+     * to be unpinned, up to MAX_FRAME_WAIT_MILLIS.
+     */
+    private FrameArena.Frame takeFrame(PageId incoming, ScanRing ring) throws DbException {
+        long waited = 0;
+        while (true) {
+            PageId victim = null;
+            synchronized (poolLock) {
+                drainHits();
+                PageId oldest = ring == null ? null : ring.oldest();
+                if (oldest != null && ringPages.get(oldest) == ring && !isPinned(oldest)) {
+                    victim = oldest;
+                    ringPages.remove(victim);
+                } else {
+                    if (ring == null) {
+                        victim = overQuotaVictim(incoming);
+                    }
+                    if (victim == null) {
+                        FrameArena.Frame f = arena.allocate();
+                        if (f != null) {
+                            framesInFlight++;
+                            return f;
+                        }
+                        victim = chooseVictim(incoming);
+                    }
+                    if (victim == null) {
+                        if (framesInFlight == 0 && pages.isEmpty()) {
+                            throw new DbException("No page to evict.");
+                        }
+                        if (waited >= MAX_FRAME_WAIT_MILLIS) {
+                            throw new DbException("Every page in the buffer pool is pinned.");
+                        }
+                        long start = System.currentTimeMillis();
+                        frameWaiters++;
+                        try {
+                            poolLock.wait(MAX_FRAME_WAIT_MILLIS - waited);
+                        } catch (InterruptedException e) {
+                            throw new DbException("Interrupted while waiting for a frame.");
+                        } finally {
+                            frameWaiters--;
+                        }
+                        waited += System.currentTimeMillis() - start;
+                        continue;
+                    }
+                }
+                framesInFlight++;
+            }
+            FrameArena.Frame f = evict(victim);
+            if (f == null) {
+                victimKept(victim);
+                continue;
+            }
+            synchronized (poolLock) {
+                if (arena.excessFrames() == 0) {
+                    return f;
+                }
+                // the pool was shrunk: drop the frame and evict another
+                arena.release(f);
+                framesInFlight--;
+                poolLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the page to evict for incoming if incoming's partition is at
+     * its quota: the unpinned page its policy chooses.  Returns null if the
+     * partition is below its quota or all its pages are pinned.  Called
+     * holding poolLock.
+     */
+    private PageId overQuotaVictim(PageId incoming) {
+        BufferPartition own = partitionOf(incoming);
+        if (own == defaultPartition || own.numPages < own.maxPages(maxPages)) {
+            return null;
+        }
+        return chooseUnpinnedVictim(own, incoming);
+    }
+
+    /**
+     * Returns the unpinned page to evict: the one the policy of the default
+     * partition chooses, else the one the policy of the largest capped
+     * partition chooses, else any page owned by a ring, else the one the
+     * policy of the largest resident partition chooses.  Returns null if
+     * every page is pinned.  Called holding poolLock.
+     */
+    private PageId chooseVictim(PageId incoming) {
+        PageId victim = chooseUnpinnedVictim(defaultPartition, incoming);
+        if (victim == null) {
+            victim = chooseFromPartitions(false, incoming);
+        }
+        if (victim == null) {
+            for (PageId pid : ringPages.keySet()) {
+                // every unpinned page of a ring
+                if (!isPinned(pid)) {
+                    victim = pid;
+                    break;
+                }
+            }
+            if (victim != null) {
+                ringPages.remove(victim);
+            }
+        }
+        if (victim == null) {
+            victim = chooseFromPartitions(true, incoming);
+        }
+        return victim;
+    }
+
+    /**
+     * Returns the unpinned page chosen by the policy of the largest of the
+     * resident or non-resident table partitions, trying the next largest
+     * while all pages of a partition are pinned.  Called holding poolLock.
+     */
+    private PageId chooseFromPartitions(boolean resident, PageId incoming) {
+        ArrayList<BufferPartition> candidates = new ArrayList<BufferPartition>();
+        for (BufferPartition p : partitions.values()) {
+            if (p.isResident() == resident && p.numPages > 0) {
+                candidates.add(p);
+            }
+        }
+        Collections.sort(candidates, new Comparator<BufferPartition>() {
+            public int compare(BufferPartition a, BufferPartition b) {
+                return b.numPages - a.numPages;
+            }
+        });
+        for (BufferPartition p : candidates) {
+            PageId victim = chooseUnpinnedVictim(p, incoming);
+            if (victim != null) {
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Undoes the choice of victim after evict failed to claim or write it:
+     * if it is still cached it goes back to its policy where it was chosen
+     * from.  Otherwise it was discarded meanwhile.
+     */
+    private void victimKept(PageId victim) {
+        synchronized (poolLock) {
+            framesInFlight--;
+            FrameArena.Frame vf = pages.get(victim);
+            Page p = vf == null ? null : vf.page;
+            if (p != null && p.getId().equals(victim)) {
+                victimReturned(vf, victim);
+            }
+        }
+    }
+
+    /**
+     * Returns the page the policy of partition chooses to evict among those
+     * not pinned, or null if all are.  Pinned pages the policy chooses are
+     * given back to it where they were chosen from: being pinned is not a
+     * new request, so it does not make a page hot.  Called holding poolLock.
+     */
+    private PageId chooseUnpinnedVictim(BufferPartition partition, PageId incoming) {
+        ArrayList<PageId> pinned = null;
+        PageId victim;
+        while ((victim = partition.policy.chooseVictim(incoming)) != null) {
+            FrameArena.Frame f = pages.get(victim);
+            if (f != null && f.managed) {
+                f.managed = false;
+                partition.numPages--;
+            }
+            if (f == null || f.pinCount() == 0) {
+                break;
+            }
+            if (pinned == null) {
+                pinned = new ArrayList<PageId>();
+            }
+            pinned.add(victim);
+        }
+        if (pinned != null) {
+            for (PageId pid : pinned) {
+                victimReturned(pages.get(pid), pid);
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Enters a cached page in the policy of its partition.  Called holding
+     * poolLock.
+     */
+    private void pageAdded(FrameArena.Frame f, PageId pid) {
+        BufferPartition partition = partitionOf(pid);
+        partition.policy.pageAdded(pid);
+        manage(f, partition);
+    }
+
+    /**
+     * Gives a victim that is not evicted back to the policy of its
+     * partition.  Called holding poolLock.
+     */
+    private void victimReturned(FrameArena.Frame f, PageId pid) {
+        BufferPartition partition = partitionOf(pid);
+        partition.policy.victimKept(pid);
+        manage(f, partition);
+    }
+
+    /**
+     * Counts f, if it is not yet, as a frame of partition.  Called holding
+     * poolLock.
+     */
+    private static void manage(FrameArena.Frame f, BufferPartition partition) {
+        if (f != null && !f.managed) {
+            f.managed = true;
+            f.partition = partition;
+            partition.numPages++;
+        }
+    }
+
+    /**
+     * Returns the partition of the table pid belongs to.  Called holding
+     * poolLock.
+     */
+    private BufferPartition partitionOf(PageId pid) {
+        BufferPartition p = pid == null ? null : partitions.get(pid.getTableId());
+        return p == null ? defaultPartition : p;
+    }
+
+    private boolean isPinned(PageId pid) {
+        FrameArena.Frame f = pages.get(pid);
+        return f != null && f.pinCount() > 0;
+    }
+
+    /**
+     * Passes the hits recorded since the last call on to the policy.  A hit
+     * on a page still owned by a ScanRing adopts the page into the pool.
+     * Hits are recorded without locking by getPage and only reach the
+     * policy here, before it chooses a victim, so the policy sees at most
+     * one hit per page between two evictions.
+     */
+    private void drainHits() {
+        PageId pid;
+        while ((pid = hits.poll()) != null) {
+            FrameArena.Frame f = pages.get(pid);
+            if (f != null) {
+                f.hitPending = false;
+                f.heat++;
+            }
+            if (ringPages.remove(pid) != null) {
+                pageAdded(f, pid);
+            } else if (f != null && f.managed) {
+                f.partition.policy.pageHit(pid);
+            }
+        }
+    }
+
+    /**
+     * Reads a page from its file, into frame if it is not null and the file
+     * supports it.
+     */
+    private Page readPage(PageId pid, ByteBuffer frame) {
+        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        if (frame != null && file instanceof HeapFile) {
+            return ((HeapFile) file).readPage(pid, frame);
+        }
+        return file.readPage(pid);
+    }
+
+    /**
+     * Returns a new ScanRing for a scan that will read tablePages pages, or
+     * null if the scan is small enough to read through the pool as usual.
+     *
+     * @see #setRingThreshold
+     */
+    public ScanRing getScanRing(int tablePages) {
+        if (tablePages <= ringThreshold * maxPages) {
+            return null;
+        }
+        return new ScanRing(Math.max(1, Math.min(RING_PAGES, maxPages / 8)));
+    }
+
+    /**
+     * Sets the fraction of the pool size above which scans read through a
+     * ScanRing.  Lower values protect the working set from smaller scans,
+     * at the price of those scans no longer leaving their table cached.
+     */
+    public void setRingThreshold(double fraction) {
+        ringThreshold = fraction;
+    }
+
+    /**
+     * Returns the fraction of the pool size above which scans read through
+     * a ScanRing.
+     */
+    public double getRingThreshold() {
+        return ringThreshold;
+    }
+
+    /**
+     * Gives the table tableId a partition of its own: its pages fill at
+     * most quota of the pool, and, if resident is true, are evicted only
+     * when no other page can be.  Changes the quota and priority of the
+     * table's partition if it has one already.  Pages of the table already
+     * cached move to the partition.
+     *
+     * @throws IllegalArgumentException unless 0 < quota <= 1
+     * @see BufferPartition
+     */
+    public BufferPartition setTablePartition(int tableId, double quota, boolean resident) {
+        if (!(quota > 0 && quota <= 1)) {
+            throw new IllegalArgumentException("Need 0 < quota <= 1.");
+        }
+        synchronized (poolLock) {
+            BufferPartition p = partitions.get(tableId);
+            if (p == null) {
+                p = new BufferPartition(newPolicy(), quota, resident);
+                p.setPoolPages(maxPages);
+                partitions.put(tableId, p);
+                moveTable(tableId);
+            } else {
+                p.set(quota, resident, maxPages);
+            }
+            return p;
+        }
+    }
+
+    /**
+     * Moves the table tableId back to the default partition.
+     */
+    public void clearTablePartition(int tableId) {
+        synchronized (poolLock) {
+            BufferPartition p = partitions.remove(tableId);
+            if (p != null) {
+                moveTable(tableId);
+                retiredHits += p.getHits();
+                retiredMisses += p.getMisses();
+            }
+        }
+    }
+
+    /**
+     * Returns the partition of the table tableId: its own, or the default
+     * partition.
+     */
+    public BufferPartition getPartition(int tableId) {
+        synchronized (poolLock) {
+            BufferPartition p = partitions.get(tableId);
+            return p == null ? defaultPartition : p;
+        }
+    }
+
+    /**
+     * Returns the partition of the tables without one of their own.
+     */
+    public BufferPartition getDefaultPartition() {
+        return defaultPartition;
+    }
+
+    /**
+     * Moves the cached pages of table tableId to the partition the table
+     * now belongs to.  Called holding poolLock.
+     */
+    private void moveTable(int tableId) {
+        for (Map.Entry<PageId, FrameArena.Frame> e : pages.entrySet()) {
+            PageId pid = e.getKey();
+            if (pid.getTableId() != tableId) {
+                continue;
+            }
+            FrameArena.Frame f = e.getValue();
+            if (f.managed) {
+                f.managed = false;
+                f.partition.numPages--;
+                f.partition.policy.pageRemoved(pid);
+                pageAdded(f, pid);
+            } else {
+                f.partition = partitionOf(pid);
+            }
+        }
+    }
+
+    /**
+     * Returns a new eviction policy of the same kind as the default
+     * partition's, for a table partition.
+     */
+    private EvictionPolicy newPolicy() {
+        try {
+            return defaultPartition.policy.getClass().getConstructor().newInstance();
+        } catch (Exception e) {
+            // no public no-argument constructor
+            return new LruEvictionPolicy();
+        }
+    }
+
+    /**
+     * Returns the number of pages the pool holds.
+     */
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Changes the number of pages the pool holds, while it is in use,
+     * keeping the pages it caches.  Growing takes effect at once.
+     * Shrinking evicts the pages the eviction policy chooses, writing
+     * dirty ones out a batch per log force, until the pool fits; pages
+     * pinned meanwhile leave as misses evict them after they are unpinned.
+     * Pages are evicted a batch at a time, so other threads keep using the
+     * pool while it shrinks.
+     *
+     * @throws IllegalArgumentException if numPages < 1
+     * @throws DbException if an evicted page could not be written
+     */
+    public void setMaxPages(int numPages) throws DbException {
+        if (numPages < 1) {
+            throw new IllegalArgumentException("A buffer pool holds at least one page.");
+        }
+        synchronized (poolLock) {
+            arena.setCapacity(numPages);
+            maxPages = numPages;
+            defaultPartition.setPoolPages(numPages);
+            for (BufferPartition p : partitions.values()) {
+                p.setPoolPages(numPages);
+            }
+            poolLock.notifyAll();
+        }
+        shrink();
+    }
+
+    /**
+     * Evicts pages until no more frames are in use than the pool holds, or
+     * all pages left are pinned.
+     */
+    private void shrink() throws DbException {
+        while (true) {
+            ArrayList<PageId> victims = new ArrayList<PageId>();
+            synchronized (poolLock) {
+                drainHits();
+                int batch = Math.min(arena.excessFrames(), WRITE_BATCH);
+                PageId victim;
+                while (victims.size() < batch
+                        && (victim = chooseVictim(null)) != null) {
+                    victims.add(victim);
+                    framesInFlight++;
+                }
+            }
+            if (victims.isEmpty()) {
+                return;
+            }
+            try {
+                // one log force for the batch, rather than one per page
+                ArrayList<PageId> dirty = new ArrayList<PageId>();
+                for (PageId pid : victims) {
+                    if (dirtyPages.contains(pid)) {
+                        dirty.add(pid);
+                    }
+                }
+                if (!dirty.isEmpty()) {
+                    synchronized (this) {
+                        writePages(dirty);
+                    }
+                }
+            } catch (IOException e) {
+                for (PageId pid : victims) {
+                    victimKept(pid);
+                }
+                throw new DbException("Could not flush evicted pages: " + e.getMessage());
+            }
+            for (int i = 0; i < victims.size(); i++) {
+                FrameArena.Frame f;
+                try {
+                    f = evict(victims.get(i));
+                } catch (DbException e) {
+                    for (int j = i + 1; j < victims.size(); j++) {
+                        victimKept(victims.get(j));
+                    }
+                    throw e;
+                }
+                if (f == null) {
+                    victimKept(victims.get(i));
+                } else {
+                    freeFrame(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the fractions of the pool that may be dirty before the background
+     * writer starts (high), and that it leaves dirty when it stops (low).
+     * A high mark of 1 or more disables the writer.
+     */
+    public void setDirtyWatermarks(double low, double high) {
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("Need 0 <= low <= high.");
+        }
+        dirtyLow = low;
+        dirtyHigh = high;
+    }
+
+    /**
+     * Returns the number of pages dirtied through the pool that have not
+     * been written since.
+     */
+    public int getNumDirtyPages() {
+        return numDirty.get();
+    }
+
+    /**
+     * Returns the number of requests that found their page cached.
+     */
+    public long getHitCount() {
+        synchronized (poolLock) {
+            long n = retiredHits + defaultPartition.getHits();
+            for (BufferPartition p : partitions.values()) {
+                n += p.getHits();
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Returns the number of requests that read their page from disk.
+     */
+    public long getMissCount() {
+        synchronized (poolLock) {
+            long n = retiredMisses + defaultPartition.getMisses();
+            for (BufferPartition p : partitions.values()) {
+                n += p.getMisses();
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Returns the number of pages evicted to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of dirty pages written to disk, on eviction or by
+     * a flush or the background writer.
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Returns the number of readOptimistic calls that read their page
+     * without a lock.
+     */
+    public long getOptimisticReadCount() {
+        return optimisticReads.get();
+    }
+
+    /**
+     * Returns the number of readOptimistic calls that gave up and read
+     * their page under a lock.
+     */
+    public long getOptimisticFallbackCount() {
+        return optimisticFallbacks.get();
+    }
+
+    /**
+     * Returns the durations of the page reads of misses.
+     */
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * Returns the durations of page writes.  A run of neighbouring pages
+     * written at once counts as one write.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Sets the statistics of the pool and of its partitions back to zero.
+     */
+    public void resetCounters() {
+        evictionCount.reset();
+        flushCount.reset();
+        optimisticReads.reset();
+        optimisticFallbacks.reset();
+        readLatency.reset();
+        writeLatency.reset();
+        synchronized (poolLock) {
+            retiredHits = 0;
+            retiredMisses = 0;
+            defaultPartition.resetCounters();
+            for (BufferPartition p : partitions.values()) {
+                p.resetCounters();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pages in the pool, counting those being read.
+     */
+    public int getNumCachedPages() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the number of pinned pages in the pool.
+     */
+    public int getNumPinnedPages() {
+        int n = 0;
+        for (FrameArena.Frame f : pages.values()) {
+            if (f.pinCount() > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of pages of each table in the pool, by table id.
+     */
+    public Map<Integer, Integer> getCachedPagesByTable() {
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (PageId pid : pages.keySet()) {
+            Integer n = counts.get(pid.getTableId());
+            counts.put(pid.getTableId(), n == null ? 1 : n + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Writes the ids of the pages in the pool, with the number of hits on
+     * each since it was read in, to snapshot, for {@link #prefetchPageSet}
+     * to read back after a restart.  Only the page table is read; no page
+     * is touched or written.
+     */
+    public void savePageSet(File snapshot) throws IOException {
+        int n = 0;
+        int[] tableIds;
+        int[] pageNumbers;
+        int[] heats;
+        synchronized (poolLock) {
+            drainHits();
+            int max = pages.size();
+            tableIds = new int[max];
+            pageNumbers = new int[max];
+            heats = new int[max];
+            for (Map.Entry<PageId, FrameArena.Frame> e : pages.entrySet()) {
+                PageId pid = e.getKey();
+                if (!(pid instanceof HeapPageId) || e.getValue().page == null || n == max) {
+                    continue;
+                }
+                tableIds[n] = pid.getTableId();
+                pageNumbers[n] = pid.pageNumber();
+                heats[n] = e.getValue().heat;
+                n++;
+            }
+        }
+        new PageSetSnapshot(Arrays.copyOf(tableIds, n), Arrays.copyOf(pageNumbers, n),
+                Arrays.copyOf(heats, n)).write(snapshot);
+    }
+
+    /**
+     * Saves the page set to snapshot every periodMillis milliseconds, from
+     * a background thread, until stopPageSetSaves is called.  Replaces
+     * saves started earlier.
+     */
+    public void startPageSetSaves(final File snapshot, long periodMillis) {
+        synchronized (poolLock) {
+            stopPageSetSaves();
+            snapshotTimer = new Timer("BufferPool snapshot", true);
+            snapshotTimer.schedule(new TimerTask() {
+                public void run() {
+                    try {
+                        savePageSet(snapshot);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, periodMillis, periodMillis);
+        }
+    }
+
+    /**
+     * Stops the periodic saves started by startPageSetSaves.
+     */
+    public void stopPageSetSaves() {
+        synchronized (poolLock) {
+            if (snapshotTimer != null) {
+                snapshotTimer.cancel();
+                snapshotTimer = null;
+            }
+        }
+    }
+
+    /**
+     * Starts reading the pages listed in snapshot into the pool, in the
+     * background, and returns the number of pages to be read.  Pages of
+     * tables no longer in the catalog, or past the end of their table, are
+     * skipped.  Only free frames are filled, nothing is evicted: if the
+     * snapshot lists more pages than there are free frames, the hottest
+     * are read.  The pages are read in table and page order, split into
+     * contiguous runs over up to threads threads, so that each thread
+     * reads its part of a table sequentially.
+     *
+     * @see #awaitPrefetch
+     */
+    public int prefetchPageSet(File snapshot, int threads) throws IOException {
+        final PageSetSnapshot s = PageSetSnapshot.read(snapshot);
+        Integer[] order = new Integer[s.size()];
+        int n = 0;
+        HashMap<Integer, Integer> tablePages = new HashMap<Integer, Integer>();
+        for (int i = 0; i < s.size(); i++) {
+            Integer numPages = tablePages.get(s.tableIds[i]);
+            if (numPages == null) {
+                numPages = -1;
+                try {
+                    DbFile file = Database.getCatalog().getDatabaseFile(s.tableIds[i]);
+                    if (file instanceof HeapFile) {
+                        numPages = ((HeapFile) file).numPages();
+                    }
+                } catch (NoSuchElementException e) {
+                    // table dropped since the snapshot was saved
+                }
+                tablePages.put(s.tableIds[i], numPages);
+            }
+            if (s.pageNumbers[i] >= 0 && s.pageNumbers[i] < numPages) {
+                order[n++] = i;
+            }
+        }
+        order = Arrays.copyOf(order, n);
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return s.heats[b] - s.heats[a];
+            }
+        });
+        synchronized (poolLock) {
+            n = Math.min(n, arena.numFree());
+        }
+        final ArrayList<PageId> pids = new ArrayList<PageId>(n);
+        final int[] heats = new int[n];
+        Arrays.sort(order, 0, n, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                if (s.tableIds[a] != s.tableIds[b]) {
+                    return s.tableIds[a] < s.tableIds[b] ? -1 : 1;
+                }
+                return s.pageNumbers[a] - s.pageNumbers[b];
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            pids.add(new HeapPageId(s.tableIds[order[i]], s.pageNumbers[order[i]]));
+            heats[i] = s.heats[order[i]];
+        }
+        threads = Math.max(1, Math.min(threads, n));
+        synchronized (poolLock) {
+            for (int t = 0; t < threads && n > 0; t++) {
+                final int from = (int) ((long) n * t / threads);
+                final int to = (int) ((long) n * (t + 1) / threads);
+                Thread prefetcher = new Thread("BufferPool prefetch " + t) {
+                    public void run() {
+                        for (int i = from; i < to && prefetch(pids.get(i), heats[i]); i++) {
+                        }
+                    }
+                };
+                prefetcher.setDaemon(true);
+                prefetchers.add(prefetcher);
+                prefetcher.start();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Reads pid into a free frame if it is not cached yet.  Returns false
+     * if there is no free frame left or the read failed.
+     */
+    private boolean prefetch(PageId pid, int heat) {
+        if (pages.containsKey(pid)) {
+            return true;
+        }
+        FrameArena.Frame f;
+        synchronized (poolLock) {
+            f = arena.allocate();
+            if (f == null) {
+                return false;
+            }
+            framesInFlight++;
+        }
+        try {
+            load(f, pid, null, Math.max(1, heat));
+            return true;
+        } catch (DbException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Waits until the pages being read in by prefetchPageSet are in the
+     * pool.
+     */
+    public void awaitPrefetch() throws InterruptedException {
+        while (true) {
+            Thread prefetcher;
+            synchronized (poolLock) {
+                if (prefetchers.isEmpty()) {
+                    return;
+                }
+                prefetcher = prefetchers.remove(prefetchers.size() - 1);
+            }
+            prefetcher.join();
+        }
+    }
+
+    /**
+     * Warms the pool up after a restart: starts reading in the pages listed
+     * in snapshot, if it exists, with PREFETCH_THREADS threads, and saves
+     * the page set there every DEFAULT_SNAPSHOT_PERIOD_MILLIS from then on.
+     * Called once the catalog is loaded when {@link #SNAPSHOT_PROPERTY} is
+     * set.
+     */
+    public void warmStart(File snapshot) {
+        if (snapshot.exists()) {
+            try {
+                prefetchPageSet(snapshot, PREFETCH_THREADS);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        startPageSetSaves(snapshot, DEFAULT_SNAPSHOT_PERIOD_MILLIS);
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -94,8 +1398,7 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public void releasePage(TransactionId tid, PageId pid) {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4                                                      // cosc460
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -104,30 +1407,100 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4                                                         // cosc460
+        transactionComplete(tid, true);
     }
 
     /**
      * Return true if the specified transaction has a lock on the specified page
      */
     public boolean holdsLock(TransactionId tid, PageId p) {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4                                                         // cosc460
-        return false;
+        return lockManager.holdsLock(tid, p);
+    }
+
+    /**
+     * Returns the lock manager holding the page locks of transactions.
+     */
+    public LockManager getLockManager() {
+        return lockManager;
     }
 
     /**
      * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * the transaction.  On commit the pages the transaction changed are
+     * written to disk; on abort they are rolled back, in the pool and, if
+     * they were written out, on disk.  Either is done before the locks are
+     * released, so no other transaction sees changes that are not
+     * committed.
      *
      * @param tid    the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
      */
     public void transactionComplete(TransactionId tid, boolean commit)
             throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4                                                         // cosc460
+        if (commit) {
+            flushPages(tid);
+        } else {
+            rollbackPages(tid);
+        }
+        versions.transactionComplete(tid, commit, this);
+        versions.endSnapshot(tid);
+        lockManager.releaseAll(tid);
+    }
+
+    /**
+     * Rolls back the pages tid changed to the versions committed before tid
+     * changed them.  Pages written out meanwhile, by eviction or
+     * write-behind, get their pending versions written back to disk; cached
+     * pages are replaced by the committed versions and marked clean.  Holds
+     * the pool's monitor so that no write-behind copies a page meanwhile.
+     */
+    private synchronized void rollbackPages(TransactionId tid) throws IOException {
+        for (PageId pid : versions.pagesWrittenBy(tid)) {
+            Page pending = versions.pendingVersion(pid);
+            if (pending != null) {
+                // a copy: snapshots may be reading pending itself
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(pending.getBeforeImage());
+            }
+            FrameArena.Frame f = pages.get(pid);
+            if (f == null) {
+                continue;
+            }
+            synchronized (f) {
+                Page cached = f.awaitPage();
+                if (cached != null && cached.getId().equals(pid)) {
+                    releaseFrame(f, cached);
+                    f.page = pending != null ? pending.getBeforeImage() : cached.getBeforeImage();
+                    markClean(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes tid a read-only transaction reading a snapshot of the database
+     * as of the last commit: getPage returns, without taking locks, the
+     * versions of pages committed before the snapshot began, whatever
+     * transactions changed them since.  The snapshot ends when tid
+     * completes.
+     */
+    public void beginSnapshot(TransactionId tid) {
+        versions.beginSnapshot(tid);
+    }
+
+    /**
+     * Returns the number of page versions kept for snapshots.
+     */
+    public int getNumVersions() {
+        return versions.getNumVersions();
+    }
+
+    /**
+     * Returns the cached page pid, or null if it is not in the pool.
+     */
+    Page getCachedPage(PageId pid) {
+        FrameArena.Frame f = pages.get(pid);
+        Page p = f == null ? null : f.page;
+        return p != null && p.getId().equals(pid) ? p : null;
     }
 
     /**
@@ -146,13 +1519,24 @@ public class BufferPool {
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-    	ArrayList<Page> arr = Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
-    	arr.get(0).markDirty(true, tid);
-    	for (int i = 0; i<cachedPages.size();i++) {
-        	if (cachedPages.get(i).getId().equals(arr.get(0).getId())){
-    			cachedPages.set(i, arr.get(0));
-    		}
-        }
+        ArrayList<Page> arr = Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
+        pagesDirtied(tid, arr);
+    }
+
+    /**
+     * Add all the tuples of an iterator to the specified table on behalf of
+     * transaction tid, using {@link DbFile#insertTuples}.  Pages dirtied by
+     * the operation are marked dirty and replace their cached versions, as
+     * for {@link #insertTuple}.
+     *
+     * @param tid     the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples  the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Page> arr = Database.getCatalog().getDatabaseFile(tableId).insertTuples(tid, tuples);
+        pagesDirtied(tid, arr);
     }
 
     /**
@@ -169,17 +1553,106 @@ public class BufferPool {
      */
     public void deleteTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-    	int tableId = t.getRecordId().getPageId().getTableId();
-    	int i = 0;
-    	for (Page p : cachedPages){
-    		if (p.getId().getTableId() == tableId){
-    			// mark dirty
-    			p.markDirty(true, tid);
-    			cachedPages.remove(t);
-    			timeSinceUse.set(i, (long) 0);
-    		}
-    		i++;
-    	}
+        if (t.getRecordId() == null) {
+            throw new DbException("Tuple is not stored in a table.");
+        }
+        int tableId = t.getRecordId().getPageId().getTableId();
+        ArrayList<Page> arr = Database.getCatalog().getDatabaseFile(tableId).deleteTuple(tid, t);
+        pagesDirtied(tid, arr);
+    }
+
+    /**
+     * Enters newPages, pages tid built in memory for the end of their file,
+     * in the pool as pages tid dirtied, under exclusive locks: like pages
+     * changed through the pool, they are logged when written out and rolled
+     * back if tid aborts.  Their space in the file must already be
+     * allocated, holding empty pages, which are their before images.
+     */
+    void addNewPages(TransactionId tid, List<? extends Page> newPages)
+            throws DbException, TransactionAbortedException {
+        for (Page p : newPages) {
+            lock(tid, p.getId(), Permissions.READ_WRITE);
+            // dirty before it can be evicted, so that eviction writes it
+            p.markDirty(true, tid);
+            install(p);
+        }
+        pagesDirtied(tid, new ArrayList<Page>(newPages));
+    }
+
+    /**
+     * Puts p in the pool, in a frame of its own or in place of the copy of
+     * its page already cached.
+     */
+    private void install(Page p) throws DbException {
+        PageId pid = p.getId();
+        while (true) {
+            FrameArena.Frame f = pages.get(pid);
+            if (f == null) {
+                f = takeFrame(pid, null);
+                f.startRead();
+                if (pages.putIfAbsent(pid, f) == null) {
+                    synchronized (poolLock) {
+                        pageAdded(f, pid);
+                        f.heat = 1;
+                        framesInFlight--;
+                        poolLock.notifyAll();
+                    }
+                    f.finish(p);
+                    return;
+                }
+                f.finish(null);
+                freeFrame(f);
+                continue;
+            }
+            synchronized (f) {
+                // no eviction can claim the frame while its latch is held
+                Page cached = f.awaitPage();
+                if (cached != null && cached.getId().equals(pid)) {
+                    if (cached != p) {
+                        releaseFrame(f, cached);
+                        f.page = p;
+                    }
+                    return;
+                }
+            }
+            // evicted meanwhile
+        }
+    }
+
+    /**
+     * Marks pages dirtied by tid and replaces the cached versions of any of
+     * them.
+     */
+    private void pagesDirtied(TransactionId tid, ArrayList<Page> arr) {
+        for (Page p : arr) {
+            p.markDirty(true, tid);
+            versions.pageWritten(tid, p.getId());
+            if (dirtyPages.add(p.getId())) {
+                numDirty.incrementAndGet();
+            }
+            FrameArena.Frame f = pages.get(p.getId());
+            if (f != null) {
+                synchronized (f) {
+                    Page cached = f.page;
+                    if (cached != null && cached != p && cached.getId().equals(p.getId())) {
+                        releaseFrame(f, cached);
+                        f.page = p;
+                    }
+                }
+            }
+        }
+        if (numDirty.get() > dirtyHigh * maxPages) {
+            startWriter();
+        }
+    }
+
+    /**
+     * Forgets that pid is dirty.
+     */
+    private void markClean(PageId pid) {
+        if (dirtyPages.remove(pid)) {
+            numDirty.decrementAndGet();
+        }
     }
 
     /**
@@ -188,20 +1661,41 @@ public class BufferPool {
      * break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        for (Page p:cachedPages){
-        	flushPage(p.getId());
+        ArrayList<PageId> dirty = new ArrayList<PageId>();
+        for (FrameArena.Frame f : pages.values()) {
+            Page p = f.page;
+            if (p != null && p.isDirty() != null) {
+                dirty.add(p.getId());
+            }
         }
+        writePages(dirty);
     }
 
     /**
      * Remove the specific page id from the buffer pool.
      * Needed by the recovery manager to ensure that the
      * buffer pool doesn't keep a rolled back page in its
-     * cache.
+     * cache.  Pinned pages are not removed.
      */
-    public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // only necessary for lab6                                                                            // cosc460
+    public void discardPage(PageId pid) {
+        FrameArena.Frame f = pages.get(pid);
+        Page p = f == null ? null : f.claim(pid);
+        if (p == null) {
+            return;
+        }
+        pages.remove(pid, f);
+        markClean(pid);
+        releaseFrame(f, p);
+        f.finish(null);
+        synchronized (poolLock) {
+            if (ringPages.remove(pid) == null && f.managed) {
+                f.managed = false;
+                f.partition.numPages--;
+                f.partition.policy.pageRemoved(pid);
+            }
+            arena.release(f);
+            poolLock.notifyAll();
+        }
     }
 
     /**
@@ -209,44 +1703,276 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-	private synchronized void flushPage(PageId pid) throws IOException {
-		DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-		Page flush = null;
-		for (int i = 0; i < cachedPages.size();i++){
-    		if (cachedPages.get(i).getId().equals(pid)){
-    			flush = cachedPages.get(i);
-    			file.writePage(cachedPages.get(i));
-    			flush.markDirty(false, new TransactionId());
-    		}
-    	}
+    private synchronized void flushPage(PageId pid) throws IOException {
+        ArrayList<PageId> one = new ArrayList<PageId>();
+        one.add(pid);
+        writePages(one);
+    }
+
+    /**
+     * Writes a page being evicted to disk if it is dirty, logging it first.
+     * The caller has claimed the page's frame.  The page stays dirty unless
+     * the write succeeds.
+     */
+    private void flushPage(Page p) throws IOException {
+        TransactionId dirtier = p.isDirty();
+        if (dirtier != null) {
+            LogFile log = Database.getLogFile();
+            log.logWrite(dirtier, p.getBeforeImage(), p);
+            log.force();
+            long start = System.nanoTime();
+            Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
+            writeLatency.record(System.nanoTime() - start);
+            flushCount.increment();
+            p.markDirty(false, null);
+        }
+        markClean(p.getId());
+    }
+
+    /**
+     * Writes the cached pages among pids that are dirty to disk: copies each
+     * one's image, logs them all, forces the log once, and writes the copies
+     * in table and page order, runs of consecutive pages of a HeapFile in
+     * one write.  A page is marked clean before its image is copied, so a
+     * change made meanwhile dirties it again, and stays pinned until the
+     * copies are written, so it cannot be evicted, and dropped, before it
+     * reaches the disk; if the write fails the pages are marked dirty again.
+     * Pages whose frames are busy are skipped: they are being read in, so
+     * they are clean, or evicted, and written by the evicting thread.
+     * Callers hold the pool's monitor, which LogFile takes before its own
+     * when it flushes the pool on a checkpoint.
+     */
+    private void writePages(List<PageId> pids) throws IOException {
+        Collections.sort(pids, PAGE_ORDER);
+        // frames pinned until the images are written, and their pages
+        ArrayList<FrameArena.Frame> frames = new ArrayList<FrameArena.Frame>();
+        ArrayList<Page> written = new ArrayList<Page>();
+        ArrayList<Page> images = new ArrayList<Page>();
+        ArrayList<Page> befores = new ArrayList<Page>();
+        ArrayList<TransactionId> dirtiers = new ArrayList<TransactionId>();
+        boolean done = false;
+        try {
+            for (PageId pid : pids) {
+                FrameArena.Frame f = pages.get(pid);
+                if (f == null) {
+                    // left the pool, written on eviction or discarded
+                    markClean(pid);
+                    continue;
+                }
+                Page p = f.page;
+                if (p == null || !p.getId().equals(pid) || !f.pin(p)) {
+                    continue;
+                }
+                TransactionId dirtier = p.isDirty();
+                if (dirtier == null) {
+                    markClean(pid);
+                    unpin(f);
+                    continue;
+                }
+                frames.add(f);
+                written.add(p);
+                dirtiers.add(dirtier);
+                versions.pageStolen(p);
+                markClean(pid);
+                p.markDirty(false, null);
+                images.add(snapshot(p));
+                befores.add(p.getBeforeImage());
+            }
+            if (!images.isEmpty()) {
+                LogFile log = Database.getLogFile();
+                for (int i = 0; i < images.size(); i++) {
+                    log.logWrite(dirtiers.get(i), befores.get(i), images.get(i));
+                }
+                log.force();
+                writeImages(images);
+                flushCount.add(images.size());
+            }
+            done = true;
+        } finally {
+            for (int i = 0; i < frames.size(); i++) {
+                if (!done) {
+                    // still pinned, so still cached: dirty again, unless
+                    // dirtied meanwhile
+                    Page p = written.get(i);
+                    if (p.isDirty() == null) {
+                        p.markDirty(true, dirtiers.get(i));
+                    }
+                    if (dirtyPages.add(p.getId())) {
+                        numDirty.incrementAndGet();
+                    }
+                }
+                unpin(frames.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of p to write out after p's frame latch is released,
+     * or p itself if its file does not make pages of images.
+     */
+    private static Page snapshot(Page p) {
+        DbFile file = Database.getCatalog().getDatabaseFile(p.getId().getTableId());
+        if (file instanceof HeapFile && p instanceof TuplePage) {
+            return ((HeapFile) file).createPage((HeapPageId) p.getId(), ByteBuffer.wrap(p.getPageData()));
+        }
+        return p;
+    }
+
+    /**
+     * Writes page images sorted by table and page number, coalescing runs
+     * of consecutive pages of a HeapFile, up to an extent, into one write.
+     */
+    private void writeImages(List<Page> images) throws IOException {
+        int i = 0;
+        while (i < images.size()) {
+            Page first = images.get(i);
+            PageId pid = first.getId();
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            int j = i + 1;
+            if (file instanceof HeapFile) {
+                while (j < images.size() && j - i < HeapFile.EXTENT_PAGES
+                        && images.get(j).getId().getTableId() == pid.getTableId()
+                        && images.get(j).getId().pageNumber() == pid.pageNumber() + (j - i)
+                        && images.get(j) instanceof TuplePage) {
+                    j++;
+                }
+            }
+            long start = System.nanoTime();
+            if (j - i == 1 || !(first instanceof TuplePage)) {
+                file.writePage(first);
+                writeLatency.record(System.nanoTime() - start);
+                i++;
+                continue;
+            }
+            ByteBuffer extent = ByteBuffer.allocate((j - i) * pageSize);
+            ArrayList<TuplePage> run = new ArrayList<TuplePage>(j - i);
+            for (int k = i; k < j; k++) {
+                TuplePage tp = (TuplePage) images.get(k);
+                extent.put(tp.getImageBuffer());
+                run.add(tp);
+            }
+            extent.flip();
+            start = System.nanoTime();
+            ((HeapFile) file).writeExtent(pid.pageNumber(), extent, run);
+            writeLatency.record(System.nanoTime() - start);
+            i = j;
+        }
+    }
+
+    /**
+     * Starts the background writer if it is not running.
+     */
+    private void startWriter() {
+        synchronized (poolLock) {
+            if (writer != null || dirtyHigh >= 1) {
+                return;
+            }
+            writer = new Thread("BufferPool writer") {
+                public void run() {
+                    writeBehind();
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Body of the background writer: writes dirty pages, a batch per log
+     * force, until at most the low watermark of the pool is dirty, or a
+     * pass over the dirty pages finds none it can write.
+     */
+    private void writeBehind() {
+        try {
+            while (true) {
+                int before = numDirty.get();
+                ArrayList<PageId> dirty = new ArrayList<PageId>(dirtyPages);
+                Collections.sort(dirty, PAGE_ORDER);
+                for (int i = 0; i < dirty.size() && numDirty.get() > dirtyLow * maxPages; i += WRITE_BATCH) {
+                    List<PageId> batch = dirty.subList(i, Math.min(dirty.size(), i + WRITE_BATCH));
+                    synchronized (this) {
+                        writePages(new ArrayList<PageId>(batch));
+                    }
+                }
+                synchronized (poolLock) {
+                    if (numDirty.get() <= dirtyLow * maxPages || numDirty.get() >= before) {
+                        writer = null;
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // e.g. a table dropped from the catalog with pages still dirty
+            e.printStackTrace();
+        }
+        synchronized (poolLock) {
+            writer = null;
+        }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
      */
     public synchronized void flushPages(TransactionId tid) throws IOException {
-    	
+        writePages(new ArrayList<PageId>(versions.pagesWrittenBy(tid)));
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Removes a page chosen for eviction from the pool, flushing it if it
+     * is dirty, and returns its frame, now free.  The caller has already
+     * dropped the page from the policy or its ring.  Threads looking the
+     * page up wait on the frame's latch while it is written, then read it
+     * again from disk.  Returns null if the page was discarded by another
+     * thread meanwhile.  If the page cannot be written it stays in its
+     * frame, dirty, and goes back to the policy as victimKept puts it.
      */
-    private synchronized void evictPage() throws DbException {
-    	int lru = 0;
-    	for (int i = 0; i<cachedPages.size();i++){
-    		if (timeSinceUse.get(i) > timeSinceUse.get(lru)){
-    			lru = i;
-    		}
-    	}
-        HeapPage p = (HeapPage) cachedPages.get(lru);
+    private FrameArena.Frame evict(PageId pid) throws DbException {
+        FrameArena.Frame f = pages.get(pid);
+        Page p = f == null ? null : f.claim(pid);
+        if (p == null) {
+            return null;
+        }
+        boolean flushed = false;
         try {
-			flushPage(p.getId());
-			cachedPages.remove(p);
-			System.out.println("Page has been flushed");
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+            versions.pageStolen(p);
+            flushPage(p);
+            flushed = true;
+        } catch (IOException e) {
+            throw new DbException("Could not flush evicted page: " + e.getMessage());
+        } finally {
+            if (!flushed) {
+                f.finish(p);
+                victimKept(pid);
+            }
+        }
+        evictionCount.increment();
+        pages.remove(pid, f);
+        releaseFrame(f, p);
+        f.finish(null);
+        return f;
+    }
+
+    /**
+     * Gives a frame taken by takeFrame back to the arena unused.
+     */
+    private void freeFrame(FrameArena.Frame f) {
+        synchronized (poolLock) {
+            arena.release(f);
+            framesInFlight--;
+            poolLock.notifyAll();
+        }
+    }
+
+    /**
+     * Detaches p, the page held in f, from f's buffer before the buffer is
+     * reused.
+     */
+    private static void releaseFrame(FrameArena.Frame f, Page p) {
+        if (f.buffer != null && p instanceof TuplePage) {
+            ((TuplePage) p).releaseFrame(f.buffer);
+        }
     }
 
 }
@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.util.Map;
+
+/**
+ * Management interface of the buffer pool, registered with the platform
+ * MBean server as {@link BufferPoolMetrics#OBJECT_NAME}.  Counters run from
+ * the creation of the pool or the last resetCounters.
+ *
+ * @see BufferPoolMetrics
+ */
+public interface BufferPoolMXBean {
+
+    /**
+     * Returns the number of requests that found their page cached.
+     */
+    public long getHits();
+
+    /**
+     * Returns the number of requests that read their page from disk.
+     */
+    public long getMisses();
+
+    /**
+     * Returns the fraction of requests that hit, 0 if there were none.
+     */
+    public double getHitRatio();
+
+    /**
+     * Returns the number of pages evicted to make room for others.
+     */
+    public long getEvictions();
+
+    /**
+     * Returns the number of dirty pages written to disk.
+     */
+    public long getDirtyPageFlushes();
+
+    /**
+     * Returns the mean duration of a page read, in microseconds.
+     */
+    public double getMeanReadMicros();
+
+    /**
+     * Returns the number of page reads by duration; see
+     * {@link LatencyHistogram} for the buckets.
+     */
+    public long[] getReadLatencyHistogram();
+
+    /**
+     * Returns the mean duration of a page write, in microseconds.
+     */
+    public double getMeanWriteMicros();
+
+    /**
+     * Returns the number of page writes by duration; see
+     * {@link LatencyHistogram} for the buckets.
+     */
+    public long[] getWriteLatencyHistogram();
+
+    /**
+     * Returns the number of pages the pool holds.
+     */
+    public int getMaxPages();
+
+    /**
+     * Returns the number of pages in the pool.
+     */
+    public int getCachedPages();
+
+    /**
+     * Returns the number of dirty pages in the pool.
+     */
+    public int getDirtyPages();
+
+    /**
+     * Returns the number of pinned pages in the pool.
+     */
+    public int getPinnedPages();
+
+    /**
+     * Returns the number of pages of each table in the pool, by table name.
+     */
+    public Map<String, Integer> getCachedPagesByTable();
+
+    /**
+     * Sets the counters and histograms back to zero.
+     */
+    public void resetCounters();
+}
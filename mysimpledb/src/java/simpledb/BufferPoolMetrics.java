@@ -0,0 +1,139 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * BufferPoolMetrics exposes the statistics of a BufferPool through JMX.
+ * The counters are kept by the pool itself, striped so that threads
+ * counting hits at once do not contend; this class only reads them when a
+ * management client asks.
+ * <p/>
+ * Setting the system property {@link #JMX_PROPERTY} registers an instance
+ * that follows {@link Database#getBufferPool} when the Database is
+ * created; {@link #register} does the same on demand.
+ */
+public class BufferPoolMetrics implements BufferPoolMXBean {
+
+    /**
+     * Name the buffer pool MBean is registered under.
+     */
+    public static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+    /**
+     * System property that registers the buffer pool MBean at startup.
+     */
+    public static final String JMX_PROPERTY = "simpledb.Jmx";
+
+    // the pool reported on, or null for the Database's
+    private final BufferPool pool;
+
+    /**
+     * Creates metrics of the Database's buffer pool, whichever it is at the
+     * time of each call.
+     */
+    public BufferPoolMetrics() {
+        this(null);
+    }
+
+    /**
+     * Creates metrics of pool.
+     */
+    public BufferPoolMetrics(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Registers metrics of the Database's buffer pool with the platform
+     * MBean server, unless they are registered already.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new BufferPoolMetrics(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by an earlier Database
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private BufferPool pool() {
+        return pool != null ? pool : Database.getBufferPool();
+    }
+
+    public long getHits() {
+        return pool().getHitCount();
+    }
+
+    public long getMisses() {
+        return pool().getMissCount();
+    }
+
+    public double getHitRatio() {
+        BufferPool p = pool();
+        long hits = p.getHitCount();
+        long total = hits + p.getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+        return pool().getEvictionCount();
+    }
+
+    public long getDirtyPageFlushes() {
+        return pool().getFlushCount();
+    }
+
+    public double getMeanReadMicros() {
+        return pool().getReadLatency().getMeanMicros();
+    }
+
+    public long[] getReadLatencyHistogram() {
+        return pool().getReadLatency().getBuckets();
+    }
+
+    public double getMeanWriteMicros() {
+        return pool().getWriteLatency().getMeanMicros();
+    }
+
+    public long[] getWriteLatencyHistogram() {
+        return pool().getWriteLatency().getBuckets();
+    }
+
+    public int getMaxPages() {
+        return pool().getMaxPages();
+    }
+
+    public int getCachedPages() {
+        return pool().getNumCachedPages();
+    }
+
+    public int getDirtyPages() {
+        return pool().getNumDirtyPages();
+    }
+
+    public int getPinnedPages() {
+        return pool().getNumPinnedPages();
+    }
+
+    public Map<String, Integer> getCachedPagesByTable() {
+        Map<String, Integer> byName = new HashMap<String, Integer>();
+        Catalog catalog = Database.getCatalog();
+        for (Map.Entry<Integer, Integer> e : pool().getCachedPagesByTable().entrySet()) {
+            String name = catalog.getTableName(e.getKey());
+            byName.put(name != null ? name : String.valueOf(e.getKey()), e.getValue());
+        }
+        return byName;
+    }
+
+    public void resetCounters() {
+        pool().resetCounters();
+    }
+}
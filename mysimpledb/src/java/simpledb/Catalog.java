@@ -158,7 +158,7 @@ public class Catalog {
            BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
 
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [storage]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -189,11 +189,34 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
+                String storage = "";
+                double quota = 1.0;
+                boolean resident = false;
+                for (String option : line.substring(line.indexOf(")") + 1).trim().toLowerCase().split("\\s+")) {
+                    if (option.equals("resident"))
+                        resident = true;
+                    else if (option.startsWith("quota="))
+                        quota = parseQuota(option.substring("quota=".length()));
+                    else if (storage.equals(""))
+                        storage = option;
+                    else {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+                HeapFile tabHf = createHeapFile(new File(baseFolder + "/" + name + ".dat"), t, storage);
                 addTable(tabHf, name, primaryKey);
-                System.out.println("Added table : " + name + " with schema " + t + (primaryKey.equals("")? "":(" key is " + primaryKey)));
+                if (resident || quota < 1.0)
+                    Database.getBufferPool().setTablePartition(tabHf.getId(), quota, resident);
+                System.out.println("Added table : " + name + " with schema " + t + (primaryKey.equals("")? "":(" key is " + primaryKey))
+                        + (storage.equals("") ? "" : (" stored as " + storage))
+                        + (resident ? " resident" : "") + (quota < 1.0 ? (" limited to " + quota + " of the buffer pool") : ""));
             }
             br.close();
+            String snapshot = System.getProperty(BufferPool.SNAPSHOT_PROPERTY);
+            if (snapshot != null) {
+                Database.getBufferPool().warmStart(new File(snapshot));
+            }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
@@ -202,5 +225,57 @@ public class Catalog {
             System.exit(0);
         }
     }
-}
 
+    /**
+     * Parses the quota of a table in the schema file: a fraction of the
+     * buffer pool ("0.3") or a percentage ("30%").
+     */
+    private static double parseQuota(String quota) {
+        try {
+            double q = quota.endsWith("%")
+                    ? Double.parseDouble(quota.substring(0, quota.length() - 1)) / 100
+                    : Double.parseDouble(quota);
+            if (q > 0 && q <= 1)
+                return q;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.out.println("Invalid quota " + quota);
+        System.exit(0);
+        return 1.0;
+    }
+
+    /**
+     * Creates the DbFile for a table in the schema file.  storage is the
+     * optional storage keyword following the field list:
+     * <ul>
+     * <li>(none) -- a plain {@link HeapFile}</li>
+     * <li>mapped -- a {@link MappedHeapFile}, read through memory-mapped regions</li>
+     * <li>slotted -- a {@link SlottedHeapFile}, storing strings in variable-length records</li>
+     * <li>pax -- a {@link PaxHeapFile}, storing each column of a page contiguously</li>
+     * <li>compressed -- a {@link CompressedHeapFile}, storing deflated pages</li>
+     * </ul>
+     * The storage keyword may be preceded or followed by buffer pool
+     * options, which give the table a {@link BufferPartition} of its own:
+     * <ul>
+     * <li>resident -- keep the table's pages cached before any other's</li>
+     * <li>quota=<i>q</i> -- let the table fill at most <i>q</i> of the pool,
+     * a fraction ("0.3") or a percentage ("30%")</li>
+     * </ul>
+     */
+    private HeapFile createHeapFile(File f, TupleDesc t, String storage) {
+        if (storage.equals(""))
+            return new HeapFile(f, t);
+        if (storage.equals("mapped"))
+            return new MappedHeapFile(f, t);
+        if (storage.equals("slotted"))
+            return new SlottedHeapFile(f, t);
+        if (storage.equals("pax"))
+            return new PaxHeapFile(f, t);
+        if (storage.equals("compressed"))
+            return new CompressedHeapFile(f, t);
+        System.out.println("Unknown storage format " + storage);
+        System.exit(0);
+        return null;
+    }
+}
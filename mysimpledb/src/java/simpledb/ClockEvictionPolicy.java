@@ -0,0 +1,97 @@
+package simpledb;
+
+import java.util.HashMap;
+
+/**
+ * The CLOCK approximation of LRU.  Cached pages sit on a circular list with
+ * a reference bit each; a hit sets the bit, and the clock hand sweeps the
+ * list clearing set bits until it finds a page whose bit is clear, which
+ * is evicted.  A hit costs a single assignment.
+ * <p/>
+ * New pages start with a clear bit, so a page read once by a scan is
+ * evicted on the next sweep while pages hit since the last sweep survive.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private static class Entry {
+        final PageId pid;
+        boolean referenced;
+        Entry prev;
+        Entry next;
+
+        Entry(PageId pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final HashMap<PageId, Entry> entries = new HashMap<PageId, Entry>();
+    // next page to examine, or null if no page is cached
+    private Entry hand;
+
+    public void setCapacity(int numPages) {
+    }
+
+    public void pageHit(PageId pid) {
+        Entry e = entries.get(pid);
+        if (e != null) {
+            e.referenced = true;
+        }
+    }
+
+    public void pageAdded(PageId pid) {
+        Entry e = new Entry(pid);
+        entries.put(pid, e);
+        if (hand == null) {
+            e.prev = e;
+            e.next = e;
+            hand = e;
+        } else {
+            // just behind the hand, so it is examined last
+            e.next = hand;
+            e.prev = hand.prev;
+            hand.prev.next = e;
+            hand.prev = e;
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        Entry e = entries.remove(pid);
+        if (e != null) {
+            unlink(e);
+        }
+    }
+
+    /**
+     * The page goes back just behind the hand with a clear bit, like a page
+     * read in, since the sweep already cleared its bit.
+     */
+    public void victimKept(PageId pid) {
+        pageAdded(pid);
+    }
+
+    public PageId chooseVictim(PageId incoming) {
+        if (hand == null) {
+            return null;
+        }
+        while (hand.referenced) {
+            hand.referenced = false;
+            hand = hand.next;
+        }
+        Entry victim = hand;
+        entries.remove(victim.pid);
+        unlink(victim);
+        return victim.pid;
+    }
+
+    private void unlink(Entry e) {
+        if (e.next == e) {
+            hand = null;
+            return;
+        }
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+        if (hand == e) {
+            hand = e.next;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are stored deflated.  It is
+ * meant for cold tables: HeapPages of short strings or sparse slots are
+ * mostly zero padding and typically shrink 5-10x, cutting both the disk
+ * footprint and the I/O of a scan, at the price of inflating every page
+ * read and deflating every page written.
+ * <p/>
+ * The table file holds the compressed images of the pages one after the
+ * other.  Since they vary in size, an index side file (see
+ * {@link #indexFileFor}) holds, for every page, the offset and length of its
+ * compressed image: page i's entry is the 12 bytes at 12 * i, a long offset
+ * followed by an int length.  The index is read into memory when the file is
+ * first used, so finding a page costs no I/O.
+ * <p/>
+ * A page written is always appended to the table file, forced to disk, and
+ * its index entry only then updated to point to the new image, leaving the
+ * old one unused.  An image is never overwritten, so a crash between the
+ * two writes leaves the entry pointing to the page's previous image,
+ * intact.  Rewriting a page in the space of its previous image would save
+ * room, but a crash in the middle of it would leave an image inflate cannot
+ * decode; cold tables are seldom written, so little space is lost.
+ * <p/>
+ * Build compressed tables with {@link #compress} or
+ * {@link HeapFileEncoder#convertCompressed}, and select them by ending the
+ * table's line in the catalog file with "compressed".
+ *
+ * @see HeapFile
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    static final int INDEX_ENTRY_SIZE = 12;
+
+    private final File indexFile;
+    private RandomAccessFile indexRaf;
+    private FileChannel index;
+
+    // in-memory copy of the index; numPages entries are valid.  null until
+    // the index is loaded.
+    private long[] offsets;
+    private int[] lengths;
+    private int numPages;
+    // end of the last image in the table file, where new images go
+    private long end;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file and its
+     * index side file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        indexFile = indexFileFor(f);
+    }
+
+    /**
+     * Returns the side file holding the page index of a compressed heap
+     * file.
+     */
+    public static File indexFileFor(File f) {
+        return new File(f.getPath() + ".idx");
+    }
+
+    /**
+     * Reads the index into memory if it is not loaded yet.
+     */
+    private synchronized void loadIndex() throws IOException {
+        if (offsets != null) {
+            return;
+        }
+        indexRaf = new RandomAccessFile(indexFile, "rw");
+        index = indexRaf.getChannel();
+        int n = (int) (index.size() / INDEX_ENTRY_SIZE);
+        ByteBuffer entries = ByteBuffer.allocate(n * INDEX_ENTRY_SIZE);
+        while (entries.hasRemaining() && index.read(entries, entries.position()) > 0) {
+        }
+        offsets = new long[Math.max(n, 16)];
+        lengths = new int[Math.max(n, 16)];
+        end = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = entries.getLong(i * INDEX_ENTRY_SIZE);
+            lengths[i] = entries.getInt(i * INDEX_ENTRY_SIZE + 8);
+            end = Math.max(end, offsets[i] + lengths[i]);
+        }
+        numPages = n;
+    }
+
+    /**
+     * Returns the number of pages in this file, according to its index.
+     */
+    public int numPages() {
+        try {
+            loadIndex();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        synchronized (this) {
+            return numPages;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pgNo = pid.pageNumber();
+        if (pgNo > numPages()) {
+            throw new IllegalArgumentException("Page number out of bounds.");
+        }
+        try {
+            byte[] page = new byte[BufferPool.getPageSize()];
+            long offset;
+            int length;
+            synchronized (this) {
+                if (pgNo == numPages) {
+                    // page just past the end of the file reads as empty
+                    return createPage((HeapPageId) pid, ByteBuffer.wrap(page));
+                }
+                offset = offsets[pgNo];
+                length = lengths[pgNo];
+            }
+            ByteBuffer compressed = ByteBuffer.allocate(length);
+            readFully(compressed, offset);
+            inflate(compressed.array(), page);
+            return createPage((HeapPageId) pid, ByteBuffer.wrap(page));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writeImage(page.getId().pageNumber(), page.getPageData());
+        pageWritten(page);
+    }
+
+    /**
+     * Appends the compressed image of page pgNo, forces it to disk, and
+     * points its index entry at it.
+     */
+    private void writeImage(int pgNo, byte[] image) throws IOException {
+        loadIndex();
+        byte[] compressed = deflate(image);
+        long offset;
+        synchronized (this) {
+            if (pgNo > numPages) {
+                throw new IllegalArgumentException("Page number out of bounds.");
+            }
+            offset = end;
+            end += compressed.length;
+        }
+        writeFully(ByteBuffer.wrap(compressed), offset);
+        // the image must be on disk before an index entry points to it
+        getChannel().force(false);
+
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.putLong(0, offset);
+        entry.putInt(8, compressed.length);
+        synchronized (this) {
+            long pos = (long) pgNo * INDEX_ENTRY_SIZE;
+            while (entry.hasRemaining()) {
+                pos += index.write(entry, pos);
+            }
+            if (pgNo == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            }
+            offsets[pgNo] = offset;
+            lengths[pgNo] = compressed.length;
+            numPages = Math.max(numPages, pgNo + 1);
+        }
+    }
+
+    /**
+     * Appends n empty pages, one image at a time.
+     */
+    protected void allocatePages(int firstPgNo, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            writeImage(firstPgNo + i, HeapPage.createEmptyPageData());
+        }
+    }
+
+    /**
+     * Compressed pages do not sit at fixed offsets, so an extent is written
+     * a page at a time.
+     */
+    protected void writeExtent(int firstPgNo, ByteBuffer extent, List<TuplePage> pages)
+            throws IOException {
+        for (TuplePage page : pages) {
+            writePage(page);
+        }
+    }
+
+    /**
+     * Closes the table and index files.  The index is reloaded by the next
+     * read or write.
+     */
+    public synchronized void close() throws IOException {
+        if (indexRaf != null) {
+            indexRaf.close();
+            indexRaf = null;
+            index = null;
+            offsets = null;
+            lengths = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Returns the total size on disk of this file: table file plus index.
+     */
+    public long sizeOnDisk() {
+        return getFile().length() + indexFile.length();
+    }
+
+    static byte[] deflate(byte[] page) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(page);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(page.length / 4);
+        byte[] buf = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    static void inflate(byte[] compressed, byte[] page) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < page.length && !inflater.finished()) {
+                int read = inflater.inflate(page, n, page.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != page.length) {
+                throw new IOException("Compressed page is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed page: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes a compressed copy of the uncompressed heap file in (of any page
+     * format: pages are compressed as raw images) to out and its index file.
+     * out and its index are overwritten.
+     */
+    public static void compress(File in, File out, int npagebytes) throws IOException {
+        RandomAccessFile src = new RandomAccessFile(in, "r");
+        RandomAccessFile dst = new RandomAccessFile(out, "rw");
+        RandomAccessFile idx = new RandomAccessFile(indexFileFor(out), "rw");
+        try {
+            dst.setLength(0);
+            idx.setLength(0);
+            byte[] page = new byte[npagebytes];
+            ByteBuffer entries = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 1024);
+            long offset = 0;
+            for (long n = in.length() / npagebytes; n > 0; n--) {
+                src.readFully(page);
+                byte[] compressed = deflate(page);
+                dst.write(compressed);
+                entries.putLong(offset);
+                entries.putInt(compressed.length);
+                offset += compressed.length;
+                if (!entries.hasRemaining()) {
+                    idx.write(entries.array(), 0, entries.position());
+                    entries.clear();
+                }
+            }
+            idx.write(entries.array(), 0, entries.position());
+        } finally {
+            src.close();
+            dst.close();
+            idx.close();
+        }
+    }
+}
@@ -32,6 +32,9 @@ public class Database {
             System.exit(1);
         }
         _logfile = tmp;
+        if (System.getProperty(BufferPoolMetrics.JMX_PROPERTY) != null) {
+            BufferPoolMetrics.register();
+        }
         // startControllerThread();
     }
 
@@ -61,11 +64,23 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * with the given eviction policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy) {
+        return resetBufferPool(new BufferPool(pages, policy));
+    }
+
+    private static BufferPool resetBufferPool(BufferPool pool) {
         java.lang.reflect.Field bufferPoolF = null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), pool);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
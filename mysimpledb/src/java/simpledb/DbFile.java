@@ -42,6 +42,23 @@ public interface DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts all the tuples of an iterator into the file on behalf of
+     * transaction.  Equivalent to calling {@link #insertTuple} for each
+     * tuple, but lets the file lay out large numbers of tuples efficiently,
+     * e.g. by building whole new pages in memory.
+     *
+     * @param tid    The transaction performing the update
+     * @param tuples The tuples to add.  Each tuple should be updated to
+     *               reflect that it is now stored in this file.
+     * @return An ArrayList containing the pages that were modified, new
+     * pages included, and must be marked dirty
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException;
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -0,0 +1,58 @@
+package simpledb;
+
+/**
+ * An EvictionPolicy decides which page the BufferPool evicts when it needs
+ * room for a new one.  The BufferPool reports every hit, every page it
+ * adds and every page it drops for other reasons, and asks for a victim
+ * when it is full.  Implementations do O(1) work per call (amortized for
+ * CLOCK) and need not be thread-safe: the BufferPool calls them while
+ * holding its own lock.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy)
+ * @see LruEvictionPolicy
+ * @see ClockEvictionPolicy
+ * @see TwoQueueEvictionPolicy
+ * @see ArcEvictionPolicy
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Sets the number of pages the buffer pool holds.  Called by the
+     * BufferPool before any other method, and again when the pool is
+     * resized.
+     */
+    public void setCapacity(int numPages);
+
+    /**
+     * Called when a cached page is requested.
+     */
+    public void pageHit(PageId pid);
+
+    /**
+     * Called when a page is read into the buffer pool, after any eviction
+     * made to make room for it.
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Called when a page leaves the buffer pool other than by eviction,
+     * e.g. when it is discarded.
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Chooses a cached page to evict and forgets it.
+     *
+     * @param incoming the page that is about to be read in its place
+     * @return the page to evict, or null if no page is cached
+     */
+    public PageId chooseVictim(PageId incoming);
+
+    /**
+     * Called when a page chooseVictim returned is not evicted after all,
+     * e.g. because it is pinned.  Puts it back as it was before it was
+     * chosen: being kept is not a new request for the page, so it must not
+     * count towards making it hot.
+     */
+    public void victimKept(PageId pid);
+}
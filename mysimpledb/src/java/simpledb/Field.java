@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for values of fields in tuples in SimpleDB.
@@ -15,6 +16,18 @@ public interface Field extends Serializable {
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field into buf at an absolute
+     * offset, without disturbing the buffer's position.  Writes exactly
+     * getType().getLen() bytes, in the same format as
+     * {@link #serialize(DataOutputStream)}.
+     *
+     * @param buf    The buffer to write to.
+     * @param offset The offset in buf of the first byte of the field.
+     * @see Type#parse(ByteBuffer, int)
+     */
+    void serialize(ByteBuffer buf, int offset);
+
     /**
      * Compare the value of this field object to the passed in value.
      *
@@ -0,0 +1,270 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A FrameArena holds the frames of a BufferPool: one per page the pool can
+ * cache, all allocated when the pool is created and handed out and taken
+ * back as pages enter and leave the pool.  Off-heap arenas back each frame
+ * with a page-sized slice of a direct ByteBuffer that pages are read into,
+ * so the images of cached pages live outside the Java heap and reading a
+ * page allocates no page-sized array.
+ * <p/>
+ * The number of frames can be changed while the arena is in use (see
+ * {@link #setCapacity}).  The free list is not synchronized; the BufferPool allocates and releases
+ * frames under its own lock.
+ */
+class FrameArena {
+
+    /**
+     * A buffer pool frame: the page it holds, and the buffer page images
+     * are read into (null for on-heap arenas).
+     * <p/>
+     * A frame is free, busy or holds a page.  While the page is being read
+     * in or written out on eviction the frame is busy and page is null;
+     * threads that find the frame in the page table meanwhile wait on the
+     * frame's monitor, its I/O latch, in {@link #awaitPage} instead of
+     * blocking the whole pool.  A frame holding a page counts the pins on
+     * it; pinning takes no lock, and a pinned frame cannot be claimed, so
+     * its page stays in it until the last unpin.
+     */
+    static final class Frame {
+        final ByteBuffer buffer;
+        volatile Page page;
+        // set by a hit on the page until the BufferPool passes the hit on to
+        // its eviction policy
+        volatile boolean hitPending;
+        // hits on the page since it was read in, as passed on to the policy;
+        // guarded by the BufferPool's lock
+        int heat;
+        // the partition of the page, set before the page is published
+        BufferPartition partition;
+        // true while the page is known to its partition's eviction policy;
+        // guarded by the BufferPool's lock
+        boolean managed;
+        // number of pins on the page, or BUSY
+        private final AtomicInteger pins = new AtomicInteger();
+
+        private static final int BUSY = -1;
+
+        Frame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Marks the empty frame busy while a page is read into it.
+         */
+        synchronized void startRead() {
+            // a thread that looked the frame's previous page up may hold a
+            // pin for an instant before it sees the page is gone
+            while (!pins.compareAndSet(0, BUSY)) {
+                Thread.yield();
+            }
+            page = null;
+            hitPending = false;
+        }
+
+        /**
+         * Ends a read or an eviction: the frame now holds p, unpinned (null
+         * if the read failed or the page was evicted), and waiting threads
+         * are woken.
+         */
+        synchronized void finish(Page p) {
+            page = p;
+            pins.set(0);
+            notifyAll();
+        }
+
+        /**
+         * Claims the frame for evicting pid: if the frame holds pid and it is
+         * not pinned, marks it busy and returns its page; returns null
+         * otherwise (the page is pinned, or another thread evicted or
+         * discarded it first).
+         */
+        synchronized Page claim(PageId pid) {
+            awaitIdle();
+            Page p = page;
+            if (p == null || !p.getId().equals(pid) || !pins.compareAndSet(0, BUSY)) {
+                return null;
+            }
+            page = null;
+            return p;
+        }
+
+        /**
+         * Pins p if the frame still holds it.  Returns false if the frame is
+         * busy or holds another page.
+         */
+        boolean pin(Page p) {
+            while (true) {
+                int n = pins.get();
+                if (n == BUSY) {
+                    return false;
+                }
+                if (pins.compareAndSet(n, n + 1)) {
+                    break;
+                }
+            }
+            if (page == p) {
+                return true;
+            }
+            unpin();
+            return false;
+        }
+
+        /**
+         * Removes a pin and returns the number left.
+         */
+        int unpin() {
+            while (true) {
+                int n = pins.get();
+                if (n <= 0) {
+                    throw new IllegalStateException("Page is not pinned.");
+                }
+                if (pins.compareAndSet(n, n - 1)) {
+                    return n - 1;
+                }
+            }
+        }
+
+        /**
+         * Returns the number of pins on the frame's page.
+         */
+        int pinCount() {
+            return Math.max(0, pins.get());
+        }
+
+        /**
+         * Waits until the frame is not busy and returns its page, which may
+         * be null or another page than the caller looked for if the frame was
+         * evicted or reused meanwhile.
+         */
+        synchronized Page awaitPage() {
+            awaitIdle();
+            return page;
+        }
+
+        private void awaitIdle() {
+            boolean interrupted = false;
+            while (pins.get() == BUSY) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // bytes per direct buffer; a ByteBuffer holds at most 2 GB
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final int pageSize;
+    private final boolean offHeap;
+    private Frame[] free;
+    private int numFree;
+    // frames free or in use
+    private int numFrames;
+    private int capacity;
+
+    /**
+     * Creates an arena of numFrames frames of pageSize bytes, off the heap
+     * if offHeap is true.
+     */
+    FrameArena(int numFrames, int pageSize, boolean offHeap) {
+        this.pageSize = pageSize;
+        this.offHeap = offHeap;
+        free = new Frame[numFrames];
+        addFrames(numFrames);
+        capacity = numFrames;
+    }
+
+    /**
+     * Allocates n new free frames.
+     */
+    private void addFrames(int n) {
+        if (numFrames + n > free.length) {
+            // room for every frame, in use ones included, to come back
+            free = Arrays.copyOf(free, numFrames + n);
+        }
+        int framesPerChunk = Math.max(1, CHUNK_BYTES / pageSize);
+        ByteBuffer chunk = null;
+        for (int i = 0; i < n; i++) {
+            ByteBuffer buffer = null;
+            if (offHeap) {
+                int slot = i % framesPerChunk;
+                if (slot == 0) {
+                    int frames = Math.min(framesPerChunk, n - i);
+                    chunk = ByteBuffer.allocateDirect(frames * pageSize);
+                }
+                chunk.limit((slot + 1) * pageSize);
+                chunk.position(slot * pageSize);
+                buffer = chunk.slice();
+            }
+            free[numFree++] = new Frame(buffer);
+        }
+        numFrames += n;
+    }
+
+    /**
+     * Sets the number of frames the arena holds.  Growing allocates the new
+     * frames at once.  Shrinking drops free frames at once, and frames in
+     * use as they are released, until no more than numFrames are left; an
+     * off-heap chunk's memory is returned once all its frames are dropped.
+     */
+    void setCapacity(int numFrames) {
+        capacity = numFrames;
+        if (capacity > this.numFrames) {
+            addFrames(capacity - this.numFrames);
+        }
+        while (this.numFrames > capacity && numFree > 0) {
+            free[--numFree] = null;
+            this.numFrames--;
+        }
+    }
+
+    /**
+     * Returns the number of frames in use beyond the arena's capacity,
+     * after it was shrunk.
+     */
+    int excessFrames() {
+        return Math.max(0, numFrames - capacity);
+    }
+
+    /**
+     * Returns the number of frames not in use.
+     */
+    int numFree() {
+        return numFree;
+    }
+
+    /**
+     * Takes a free frame, or returns null if all frames are in use.
+     */
+    Frame allocate() {
+        if (numFree == 0) {
+            return null;
+        }
+        Frame f = free[--numFree];
+        free[numFree] = null;
+        return f;
+    }
+
+    /**
+     * Gives back a frame taken with allocate.  The frame is dropped if the
+     * arena is over capacity.
+     */
+    void release(Frame f) {
+        f.page = null;
+        if (numFrames > capacity) {
+            numFrames--;
+            return;
+        }
+        free[numFree++] = f;
+    }
+}
@@ -0,0 +1,174 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * FreeSpaceMap records how much free space each page of a HeapFile has, so
+ * that an insert can go straight to a page with room instead of fetching
+ * every page of the table through the buffer pool.
+ * <p/>
+ * The map lives in memory and is mirrored to a small side file next to the
+ * table (see {@link #fileFor}), one int per page.  The in-memory entries
+ * follow the pages as they are modified in the buffer pool; the side file
+ * entry of a page is rewritten whenever that page is written to disk, so
+ * the side file describes the pages as they are on disk.  If the side file
+ * is missing, or the table file has been written since the side file was
+ * (i.e. by someone not maintaining the map), the map is rebuilt from the
+ * page headers on disk.
+ * <p/>
+ * Entries are hints: callers must check that a page really has room and
+ * correct the map with {@link #update} when it does not.
+ * <p/>
+ * The entries are the leaves of a max-tree, each inner node holding the
+ * most free space under it, so finding the first page with room for a
+ * tuple and updating an entry both take O(log pages) however many pages
+ * have a little space left, as nearly all pages of a slotted table do.
+ *
+ * @see HeapFile#insertTuple
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    // the max-tree: with n = tree.length / 2 leaves, tree[n + i] is the
+    // free space on page i (0 for i >= numPages), and tree[j] for 0 < j < n
+    // is the larger of tree[2j] and tree[2j + 1]
+    private int[] tree = new int[32];
+    private int numPages;
+
+    /**
+     * Returns the side file holding the free-space map of a heap file.
+     */
+    public static File fileFor(File heapFile) {
+        return new File(heapFile.getPath() + ".fsm");
+    }
+
+    /**
+     * Opens the free-space map of hf, loading it from its side file if that
+     * is up to date and rebuilding it from hf's pages otherwise.
+     */
+    public FreeSpaceMap(HeapFile hf) throws IOException {
+        this.file = fileFor(hf.getFile());
+        boolean upToDate = file.exists() && file.lastModified() >= hf.getFile().lastModified();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+
+        int pages = hf.numPages();
+        ByteBuffer entries = ByteBuffer.allocate(4 * pages);
+        int loaded = 0;
+        if (upToDate) {
+            while (entries.hasRemaining() && channel.read(entries, entries.position()) > 0) {
+            }
+            loaded = entries.position() / 4;
+        }
+        for (int i = 0; i < loaded; i++) {
+            update(i, entries.getInt(4 * i));
+        }
+        for (int i = loaded; i < pages; i++) {
+            persist(i, hf.getFreeSpace(hf.readPage(new HeapPageId(hf.getId(), i))));
+        }
+        channel.truncate(4L * pages);
+    }
+
+    /**
+     * Returns the lowest-numbered page believed to have at least needed
+     * units of free space, or -1 if there is none.
+     */
+    public synchronized int findPage(int needed) {
+        needed = Math.max(needed, 1);
+        if (tree[1] < needed) {
+            return -1;
+        }
+        // descend to the leftmost leaf with room
+        int leaves = tree.length / 2;
+        int j = 1;
+        while (j < leaves) {
+            j = tree[2 * j] >= needed ? 2 * j : 2 * j + 1;
+        }
+        return j - leaves;
+    }
+
+    /**
+     * Returns the free space recorded for page pgNo (0 for pages beyond the
+     * end of the map).
+     */
+    public synchronized int getFreeSpace(int pgNo) {
+        return pgNo < numPages ? tree[tree.length / 2 + pgNo] : 0;
+    }
+
+    /**
+     * Returns the number of pages covered by the map.
+     */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /**
+     * Records that page pgNo now has freeSpace units of free space.  Only
+     * the in-memory map is changed.
+     */
+    public synchronized void update(int pgNo, int freeSpace) {
+        if (pgNo >= tree.length / 2) {
+            grow(pgNo + 1);
+        }
+        if (pgNo >= numPages) {
+            numPages = pgNo + 1;
+        }
+        int j = tree.length / 2 + pgNo;
+        tree[j] = freeSpace;
+        for (j /= 2; j > 0; j /= 2) {
+            int max = Math.max(tree[2 * j], tree[2 * j + 1]);
+            if (tree[j] == max) {
+                // nothing above changes either
+                break;
+            }
+            tree[j] = max;
+        }
+    }
+
+    /**
+     * Doubles the number of leaves of the tree until there is one for each
+     * of pages pages, and rebuilds the inner nodes.
+     */
+    private void grow(int pages) {
+        int leaves = tree.length / 2;
+        int newLeaves = leaves;
+        while (newLeaves < pages) {
+            newLeaves *= 2;
+        }
+        int[] bigger = new int[2 * newLeaves];
+        System.arraycopy(tree, leaves, bigger, newLeaves, numPages);
+        for (int j = newLeaves - 1; j > 0; j--) {
+            bigger[j] = Math.max(bigger[2 * j], bigger[2 * j + 1]);
+        }
+        tree = bigger;
+    }
+
+    /**
+     * Records the free space of page pgNo as just written to disk, both in
+     * memory and in the side file.
+     */
+    public synchronized void persist(int pgNo, int freeSpace) throws IOException {
+        update(pgNo, freeSpace);
+        ByteBuffer entry = ByteBuffer.allocate(4);
+        entry.putInt(0, freeSpace);
+        long offset = 4L * pgNo;
+        while (entry.hasRemaining()) {
+            offset += channel.write(entry, offset);
+        }
+    }
+
+    /**
+     * Closes the side file.
+     */
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+}
@@ -1,16 +1,13 @@
 package simpledb;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -27,6 +24,20 @@ public class HeapFile implements DbFile {
 	
 	private File file;
 	private TupleDesc tD;
+
+    /**
+     * Long-lived channel used for all page I/O on this file.  Positional
+     * reads and writes on a FileChannel do not touch the channel's position,
+     * so concurrent readers can share it without further synchronization.
+     */
+    private volatile FileChannel channel;
+    private RandomAccessFile raf;
+
+    // free space per page, opened on the first insert or delete
+    private FreeSpaceMap fsm;
+    // false if a subclass reads pages its own way, see readPage(PageId, ByteBuffer)
+    private final boolean readsIntoFrames;
+
     /**
      * Constructs a heap file backed by the specified file.
      *
@@ -36,6 +47,19 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
         file = f;
         tD = td;
+        readsIntoFrames = !overridesReadPage(getClass());
+    }
+
+    /**
+     * Returns true if c overrides readPage(PageId), in which case pages read
+     * by the buffer pool must still go through that method.
+     */
+    private static boolean overridesReadPage(Class<?> c) {
+        try {
+            return c.getMethod("readPage", PageId.class).getDeclaringClass() != HeapFile.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     /**
@@ -69,44 +93,182 @@ public class HeapFile implements DbFile {
         return tD;
     }
 
+    /**
+     * Returns the channel backing this file, opening it on first use.  The
+     * channel is reopened if a previous one was closed (e.g. because a thread
+     * was interrupted in the middle of an I/O call).
+     */
+    protected FileChannel getChannel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                if (raf != null) {
+                    raf.close();
+                }
+                raf = new RandomAccessFile(file, "rw");
+                channel = raf.getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Closes the channel backing this file.  The file is transparently
+     * reopened by the next read or write.
+     */
+    public synchronized void close() throws IOException {
+        if (fsm != null) {
+            fsm.close();
+            fsm = null;
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+        channel = null;
+    }
+
+    /**
+     * Fills dst from the file starting at offset, stopping early only at end
+     * of file (the remainder of dst is left untouched).
+     */
+    protected void readFully(ByteBuffer dst, long offset) throws IOException {
+        FileChannel ch = getChannel();
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, offset);
+            if (n < 0) {
+                break;
+            }
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes all of src to the file starting at offset.
+     */
+    protected void writeFully(ByteBuffer src, long offset) throws IOException {
+        FileChannel ch = getChannel();
+        while (src.hasRemaining()) {
+            offset += ch.write(src, offset);
+        }
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
-        InputStream input = null;
-		byte[] data;
+        return readPageInto(pid, ByteBuffer.allocate(BufferPool.getPageSize()));
+    }
+
+    /**
+     * Reads the specified page into frame, a page-sized buffer that becomes
+     * the page's image, and returns the page.  Used by the BufferPool to
+     * read pages into its own frames.  If a subclass overrides
+     * {@link #readPage(PageId)} (e.g. to map or decompress pages) frame is
+     * left unused and the page comes from that method.
+     */
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        if (!readsIntoFrames) {
+            return readPage(pid);
+        }
+        return readPageInto(pid, frame);
+    }
+
+    private Page readPageInto(PageId pid, ByteBuffer frame) {
+        if (pid.pageNumber() > numPages()) {
+            throw new IllegalArgumentException("Page number out of bounds.");
+        }
         try {
-			input = new BufferedInputStream(new FileInputStream(file));
-			data = new byte[BufferPool.PAGE_SIZE];
-			if (pid.pageNumber()>this.numPages()){
-				input.close();
-				throw new RuntimeException("Page number out of bounds.");
-			}
-			input.skip(BufferPool.PAGE_SIZE*pid.pageNumber());
-			input.read(data);
-			input.close();
-			return new HeapPage((HeapPageId) pid, data);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			return null;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-    	return null;
+            frame.clear();
+            readFully(frame, (long) BufferPool.getPageSize() * pid.pageNumber());
+            // past the end of the file; frame may hold an older page
+            while (frame.hasRemaining()) {
+                frame.put((byte) 0);
+            }
+            frame.clear();
+            return createPage((HeapPageId) pid, frame);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-    	RandomAccessFile raf = new RandomAccessFile(file, "rw");
-        int pageNum = page.getId().pageNumber() * BufferPool.getPageSize();
-        raf.skipBytes(pageNum);
-        raf.write(page.getPageData());
-        raf.close();
+        long offset = (long) BufferPool.getPageSize() * page.getId().pageNumber();
+        ByteBuffer image = page instanceof TuplePage
+                ? ((TuplePage) page).getImageBuffer() : ByteBuffer.wrap(page.getPageData());
+        writeFully(image, offset);
+        pageWritten(page);
+    }
+
+    /**
+     * Called after page has been written to disk.  Records the page's free
+     * space in the free-space map, if the map has been opened; a table that
+     * is never modified never needs one.
+     */
+    protected void pageWritten(Page page) throws IOException {
+        FreeSpaceMap map;
+        synchronized (this) {
+            map = fsm;
+        }
+        if (map != null) {
+            map.persist(page.getId().pageNumber(), getFreeSpace(page));
+        }
+    }
+
+    /**
+     * Creates a page of this file's format over the page image in data.
+     * Subclasses storing another page format override this.
+     */
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new HeapPage(pid, data);
+    }
+
+    /**
+     * Returns the free space on page, in the units kept by the free-space
+     * map (see {@link TuplePage#getFreeSpace()}).
+     */
+    protected int getFreeSpace(Page page) {
+        return ((TuplePage) page).getFreeSpace();
+    }
+
+    /**
+     * Returns the free space a page must have to take t, in the units of
+     * {@link #getFreeSpace}: one empty slot for a HeapPage.
+     */
+    protected int spaceNeeded(Tuple t) {
+        return 1;
+    }
+
+    /**
+     * Returns the free-space map of this file, opening (and if necessary
+     * rebuilding) it on first use.
+     */
+    protected synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (fsm == null) {
+            fsm = new FreeSpaceMap(this);
+        }
+        return fsm;
+    }
+
+    /**
+     * Appends an empty page to the file and returns its page number.
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        int pgNo = numPages();
+        // writing one page past the end extends the file
+        HeapPageId pid = new HeapPageId(getId(), pgNo);
+        writePage(createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData())));
+        return pgNo;
     }
 
     /**
      * Returns the number of pages in this HeapFile.
      */
     public int numPages() {
-        return (int) Math.floor(file.length()/BufferPool.PAGE_SIZE);
+        return (int) (file.length() / BufferPool.getPageSize());
     }
 
     // see DbFile.java for javadocs
@@ -116,25 +278,172 @@ public class HeapFile implements DbFile {
     		throw new DbException("TupleDescs do not match.");
     	}
     	ArrayList<Page> returnArray = new ArrayList<Page>();
-    	int i = 0;
-    	for (; i < numPages(); i++){
-    		HeapPage hp = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_WRITE);
-    		if (hp.getNumEmptySlots()!=0){
-    			hp.insertTuple(t);
-    			returnArray.add(hp);
-    			return returnArray;
+    	FreeSpaceMap map = getFreeSpaceMap();
+    	int needed = spaceNeeded(t);
+    	while (true) {
+    		int pgNo = map.findPage(needed);
+    		boolean appended = pgNo < 0;
+    		if (appended) {
+    			// pages all full
+    			pgNo = appendEmptyPage();
+    		}
+    		HeapPageId pid = new HeapPageId(getId(), pgNo);
+    		boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+    		TuplePage tp = (TuplePage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_WRITE);
+    		boolean inserted = false;
+    		try {
+    			if (tp.getFreeSpace() >= needed) {
+    				tp.insertTuple(t);
+    				tp.markDirty(true, tid);
+    				map.update(pgNo, tp.getFreeSpace());
+    				returnArray.add(tp);
+    				inserted = true;
+    				return returnArray;
+    			}
+    			// the map was stale (e.g. another insert got there first)
+    			map.update(pgNo, tp.getFreeSpace());
+    			if (appended && !tp.iterator().hasNext()) {
+    				// ... or t does not fit even on an empty page
+    				throw new DbException("Tuple is too large for a page.");
+    			}
+    		} finally {
+    			Database.getBufferPool().unpinPage(pid);
+    			if (!inserted && !locked) {
+    				// the page was only looked at: other inserts may use it
+    				Database.getBufferPool().releasePage(tid, pid);
+    			}
     		}
     	}
-    	// Pages all full
-    	HeapPage hp = new HeapPage(new HeapPageId(getId(), i), HeapPage.createEmptyPageData());    	
-    	hp.insertTuple(t);
-    	BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file, true));	
-    	bos.write(hp.getPageData());
-    	bos.flush();
-    	bos.close();
-    	writePage(hp);
-    	returnArray.add(hp);
-    	return returnArray;
+    }
+
+    /**
+     * Number of new pages insertTuples builds in memory and allocates in the
+     * file with a single write.
+     */
+    public static final int EXTENT_PAGES = 64;
+
+    /**
+     * Inserts all of tuples.  Tuples first go to the pages the free-space
+     * map lists as having room, through the buffer pool, filling each page
+     * before moving on.  Each page is pinned while it is filled and marked
+     * dirty before it is unpinned, so that it is written out if it is
+     * evicted before the insert returns.  The rest go to new pages that are
+     * built in memory, EXTENT_PAGES at a time, whose space is allocated in
+     * the file with one write each; they then enter the buffer pool as pages
+     * tid dirtied (see {@link BufferPool#addNewPages}), so they are logged,
+     * locked and rolled back like any other page tid changes.
+     *
+     * @see DbFile#insertTuples
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Page> modified = new ArrayList<Page>();
+        FreeSpaceMap map = getFreeSpaceMap();
+        Tuple t = nextTuple(tuples);
+        while (t != null) {
+            int pgNo = map.findPage(spaceNeeded(t));
+            if (pgNo < 0) {
+                break;
+            }
+            HeapPageId pid = new HeapPageId(getId(), pgNo);
+            boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            TuplePage tp = (TuplePage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_WRITE);
+            boolean inserted = false;
+            try {
+                while (t != null && tp.getFreeSpace() >= spaceNeeded(t)) {
+                    tp.insertTuple(t);
+                    inserted = true;
+                    t = nextTuple(tuples);
+                }
+                map.update(pgNo, tp.getFreeSpace());
+                if (inserted) {
+                    tp.markDirty(true, tid);
+                    if (!modified.contains(tp)) {
+                        modified.add(tp);
+                    }
+                }
+            } finally {
+                Database.getBufferPool().unpinPage(pid);
+                if (!inserted && !locked) {
+                    Database.getBufferPool().releasePage(tid, pid);
+                }
+            }
+        }
+        while (t != null) {
+            t = appendExtent(tid, t, tuples, modified);
+        }
+        return modified;
+    }
+
+    private Tuple nextTuple(Iterator<Tuple> tuples) throws DbException {
+        if (!tuples.hasNext()) {
+            return null;
+        }
+        Tuple t = tuples.next();
+        if (!tD.equals(t.getTupleDesc())) {
+            throw new DbException("TupleDescs do not match.");
+        }
+        return t;
+    }
+
+    /**
+     * Fills up to EXTENT_PAGES new pages with t and the tuples following it,
+     * allocates them at the end of the file, enters them in the buffer pool
+     * as pages tid dirtied, adds them to modified and returns the first
+     * tuple that did not fit, or null if tuples ran out.
+     */
+    private Tuple appendExtent(TransactionId tid, Tuple t, Iterator<Tuple> tuples, ArrayList<Page> modified)
+            throws DbException, IOException, TransactionAbortedException {
+        ArrayList<TuplePage> pages = new ArrayList<TuplePage>();
+        synchronized (this) {
+            int firstPgNo = numPages();
+            while (t != null && pages.size() < EXTENT_PAGES) {
+                HeapPageId pid = new HeapPageId(getId(), firstPgNo + pages.size());
+                TuplePage tp = createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+                if (tp.getFreeSpace() < spaceNeeded(t)) {
+                    throw new DbException("Tuple is too large for a page.");
+                }
+                while (t != null && tp.getFreeSpace() >= spaceNeeded(t)) {
+                    tp.insertTuple(t);
+                    t = nextTuple(tuples);
+                }
+                pages.add(tp);
+            }
+            allocatePages(firstPgNo, pages.size());
+        }
+        // locked outside this file's monitor, which inserts into the table
+        // need; the pages are in no free-space map entry yet, so no other
+        // insert goes to them meanwhile
+        Database.getBufferPool().addNewPages(tid, pages);
+        FreeSpaceMap map = getFreeSpaceMap();
+        for (TuplePage tp : pages) {
+            map.update(tp.getId().pageNumber(), tp.getFreeSpace());
+            modified.add(tp);
+        }
+        return t;
+    }
+
+    /**
+     * Extends the file with n empty pages starting at firstPgNo, its current
+     * end, in one write, without recording them in the free-space map.
+     * Subclasses that do not store pages at fixed offsets override this.
+     */
+    protected void allocatePages(int firstPgNo, int n) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        writeFully(ByteBuffer.allocate(n * pageSize), (long) pageSize * firstPgNo);
+    }
+
+    /**
+     * Writes pages, which are consecutive pages starting at firstPgNo whose
+     * images are laid out back to back in extent, to disk.  Subclasses that
+     * do not store pages at fixed offsets override this.
+     */
+    protected void writeExtent(int firstPgNo, ByteBuffer extent, List<TuplePage> pages)
+            throws IOException {
+        writeFully(extent, (long) BufferPool.getPageSize() * firstPgNo);
+        for (TuplePage page : pages) {
+            pageWritten(page);
+        }
     }
 
     // see DbFile.java for javadocs
@@ -142,10 +451,21 @@ public class HeapFile implements DbFile {
             TransactionAbortedException {
     	ArrayList<Page> returnArray = new ArrayList<Page>();
     	RecordId rid = t.getRecordId();
+    	if (rid == null || rid.getPageId().getTableId() != getId()) {
+    		throw new DbException("Tuple is not a member of this file.");
+    	}
     	BufferPool b = Database.getBufferPool();
-    	Page p = b.getPage(tid, rid.getPageId(), null);
-    	HeapPage hp = (HeapPage) p;
-    	hp.deleteTuple(t);
+    	TuplePage tp = (TuplePage) b.pinPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+    	try {
+    		tp.deleteTuple(t);
+    		tp.markDirty(true, tid);
+    		getFreeSpaceMap().update(tp.getId().pageNumber(), tp.getFreeSpace());
+    	} catch (IOException e) {
+    		throw new DbException("Could not open free-space map: " + e.getMessage());
+    	} finally {
+    		b.unpinPage(tp.getId());
+    	}
+    	returnArray.add(tp);
     	return returnArray; 
     }
 
@@ -154,9 +474,11 @@ public class HeapFile implements DbFile {
         
 	    class HeapFileIterator implements DbFileIterator{
 	    	private HeapFile hf;
-	    	private HeapPage curPage;
+	    	private TuplePage curPage;
 	    	private TransactionId tId;
 			private Iterator<Tuple> tuples;
+			// frames for scans of large tables, see BufferPool.getScanRing
+			private ScanRing ring;
 			int pagenum = -1;
 			
 			public HeapFileIterator(HeapFile heapfile, TransactionId tid){
@@ -169,15 +491,31 @@ public class HeapFile implements DbFile {
 					System.err.println("Iterator has already been opened.");
 					throw new TransactionAbortedException();
 				}
-				curPage = (HeapPage) Database.getBufferPool().getPage(tId , new HeapPageId(hf.getId(),0), Permissions.READ_ONLY);
-				tuples = curPage.iterator();
+				ring = Database.getBufferPool().getScanRing(hf.numPages());
+				pin(0);
 				pagenum = 0;
 			}
+			
+			/*
+			 * Moves to page pgNo, keeping it pinned while the iterator is on
+			 * it
+			 */
+			private void pin(int pgNo) throws DbException, TransactionAbortedException {
+				unpin();
+				curPage = (TuplePage) Database.getBufferPool().pinPage(tId, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY, ring);
+				tuples = curPage.iterator();
+			}
+			
+			private void unpin() {
+				if (curPage != null) {
+					Database.getBufferPool().unpinPage(curPage.getId());
+					curPage = null;
+				}
+			}
+			
 			@Override
 			public void close() {
-				if (pagenum != -1){
-					Database.getBufferPool().discardPage(curPage.getId());
-				}
+				unpin();
 				pagenum = -1;
 			}
 			
@@ -205,10 +543,8 @@ public class HeapFile implements DbFile {
 						return tuples.next();
 					}
 					else{
-						Database.getBufferPool().discardPage(curPage.getId());
 						pagenum++;
-						curPage = (HeapPage) Database.getBufferPool().getPage(tId, new HeapPageId(hf.getId(), pagenum), Permissions.READ_ONLY);
-						tuples = curPage.iterator();
+						pin(pagenum);
 						if (tuples.hasNext()){
 							return tuples.next();
 						}
@@ -230,9 +566,13 @@ public class HeapFile implements DbFile {
 				if (pagenum==-1){
 					throw new TransactionAbortedException();
 				}
-				pagenum = 0;
-				curPage = (HeapPage) Database.getBufferPool().getPage(tId, new HeapPageId(hf.getId(), pagenum), null);
-				tuples = curPage.iterator();
+				if (pagenum != 0 || curPage == null) {
+					// the first page is fetched again only if the scan left it
+					pagenum = 0;
+					pin(0);
+				} else {
+					tuples = curPage.iterator();
+				}
 			}
 		}
 	    return new HeapFileIterator(this,tid);
@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -224,4 +226,136 @@ public class HeapFileEncoder {
         br.close();
         os.close();
     }
+
+    /**
+     * Convert the specified input text file into a binary page file of
+     * {@link SlottedHeapPage}s, for use as a {@link SlottedHeapFile}.  The
+     * input format is the same as for
+     * {@link #convert(File, File, int, int, Type[], char)}: one tuple per
+     * line, fields separated by fieldSeparator.  Fields are trimmed, strings
+     * longer than Type.STRING_LEN are truncated, blank lines are skipped,
+     * and lines with a malformed integer are reported and skipped.
+     *
+     * @param inFile         The input file to read data from
+     * @param outFile        The output file to write data to
+     * @param npagebytes     The number of bytes per page in the output file
+     * @param numFields      the number of fields in each input line/output tuple
+     * @param typeAr         the types of the fields
+     * @param fieldSeparator the character separating fields on a line
+     * @throws IOException if the input/output file can't be opened
+     * @see SlottedHeapPage
+     */
+    public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                                      int numFields, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile));
+        ByteBuffer page = ByteBuffer.allocate(npagebytes);
+        boolean pageEmpty = true;
+        int npages = 0;
+
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().length() == 0) {
+                continue;
+            }
+            Field[] fields = parseLine(line, numFields, typeAr, fieldSeparator);
+            if (fields == null) {
+                continue;
+            }
+            if (!SlottedHeapPage.appendRecord(page, fields)) {
+                if (pageEmpty) {
+                    br.close();
+                    os.close();
+                    throw new IOException("Tuple does not fit on a page: " + line);
+                }
+                os.write(page.array());
+                npages++;
+                page = ByteBuffer.allocate(npagebytes);
+                SlottedHeapPage.appendRecord(page, fields);
+            }
+            pageEmpty = false;
+        }
+        // flush the last page; an empty file still gets one empty page
+        if (!pageEmpty || npages == 0) {
+            os.write(page.array());
+        }
+        br.close();
+        os.close();
+    }
+
+    /**
+     * Convert the specified input text file into a binary page file of
+     * {@link PaxHeapPage}s, for use as a {@link PaxHeapFile}.  The input
+     * is read exactly as by {@link #convert(File, File, int, int, Type[], char)},
+     * and each page written is the column-major rearrangement of the page
+     * that method would write.
+     *
+     * @see PaxHeapPage#fromHeapPageData
+     */
+    public static void convertPax(File inFile, File outFile, int npagebytes,
+                                  int numFields, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        File rows = File.createTempFile("tempTable", ".dat");
+        rows.deleteOnExit();
+        ParallelHeapFileEncoder.convert(inFile, rows, npagebytes, numFields, typeAr, fieldSeparator);
+
+        TupleDesc td = new TupleDesc(typeAr);
+        DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(rows)));
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile));
+        byte[] page = new byte[npagebytes];
+        for (long n = rows.length() / npagebytes; n > 0; n--) {
+            is.readFully(page);
+            os.write(PaxHeapPage.fromHeapPageData(page, td));
+        }
+        is.close();
+        os.close();
+        rows.delete();
+    }
+
+    /**
+     * Convert the specified input text file into a compressed heap file
+     * (and its index file), for use as a {@link CompressedHeapFile}.  The
+     * input is read exactly as by
+     * {@link #convert(File, File, int, int, Type[], char)}, and the pages
+     * that method would write are compressed one by one.
+     *
+     * @see CompressedHeapFile#compress
+     */
+    public static void convertCompressed(File inFile, File outFile, int npagebytes,
+                                         int numFields, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        File rows = File.createTempFile("tempTable", ".dat");
+        rows.deleteOnExit();
+        ParallelHeapFileEncoder.convert(inFile, rows, npagebytes, numFields, typeAr, fieldSeparator);
+        CompressedHeapFile.compress(rows, outFile, npagebytes);
+        rows.delete();
+    }
+
+    /**
+     * Parses one line of input into fields, or returns null (after
+     * reporting it) if the line is malformed.
+     */
+    private static Field[] parseLine(String line, int numFields, Type[] typeAr, char fieldSeparator) {
+        String[] values = line.split(Pattern.quote(String.valueOf(fieldSeparator)), -1);
+        if (values.length != numFields) {
+            System.out.println("BAD LINE : " + line);
+            return null;
+        }
+        Field[] fields = new Field[numFields];
+        for (int i = 0; i < numFields; i++) {
+            String s = values[i].trim();
+            if (typeAr[i] == Type.INT_TYPE) {
+                try {
+                    fields[i] = new IntField(Integer.parseInt(s));
+                } catch (NumberFormatException e) {
+                    System.out.println("BAD LINE : " + line);
+                    return null;
+                }
+            } else {
+                fields[i] = new StringField(s, Type.STRING_LEN);
+            }
+        }
+        return fields;
+    }
 }
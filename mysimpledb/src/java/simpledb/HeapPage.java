@@ -1,33 +1,25 @@
 package simpledb;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p/>
+ * A HeapPage keeps the raw page image and decodes it lazily (see
+ * {@link TuplePage}).  Every tuple takes the same number of bytes, so the
+ * offset of every field is fixed by the TupleDesc and a field is read
+ * straight out of the page image.
  *
  * @see HeapFile
  * @see BufferPool
  */
-public class HeapPage implements Page {
+public class HeapPage extends TuplePage {
 
-    final HeapPageId pid;
-    final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
     final int numSlots;
-    
-    byte[] oldData;
-    private final Byte oldDataLock = new Byte((byte) 0);
-    private boolean dirty;
-    private TransactionId tid;
+    final int headerSize;
+    final int tupleSize;
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -47,26 +39,24 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
-        this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
-        this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
+        // the caller keeps its array; it is copied if the page is modified
+        this(id, ByteBuffer.wrap(data).asReadOnlyBuffer());
+    }
 
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
-        }
-        dis.close();
-        setBeforeImage();
+    /**
+     * Create a HeapPage over the page image held in data, e.g. a slice of a
+     * memory-mapped file.  The layout is the same as for
+     * {@link #HeapPage(HeapPageId, byte[])}; data's position and limit are
+     * ignored, the page image starts at offset 0.  The buffer is not copied:
+     * the page reads tuples straight out of it, and modifies it in place
+     * unless it is read-only, in which case it is copied on the first
+     * modification.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) {
+        super(id, data);
+        this.tupleSize = td.getSize();
+        this.numSlots = getNumTuples();
+        this.headerSize = getHeaderSize();
     }
 
     /**
@@ -75,7 +65,7 @@ public class HeapPage implements Page {
      * @return the number of tuples on this page
      */
     private int getNumTuples() {
-    	return (int) Math.floor((BufferPool.getPageSize()*8) / (td.getSize()*8+ 1));
+        return (BufferPool.getPageSize() * 8) / (tupleSize * 8 + 1);
     }
 
     /**
@@ -84,7 +74,7 @@ public class HeapPage implements Page {
      * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
      */
     private int getHeaderSize() {
-        return (int) Math.ceil(numSlots / 8.0);
+        return (numSlots + 7) / 8;
     }
 
     /**
@@ -93,11 +83,7 @@ public class HeapPage implements Page {
      */
     public HeapPage getBeforeImage() {
         try {
-            byte[] oldDataRef = null;
-            synchronized (oldDataLock) {
-                oldDataRef = oldData;
-            }
-            return new HeapPage(pid, oldDataRef);
+            return new HeapPage(pid, getBeforeImageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -106,122 +92,13 @@ public class HeapPage implements Page {
         return null;
     }
 
-    public void setBeforeImage() {
-        synchronized (oldDataLock) {
-            oldData = getPageData().clone();
-        }
-    }
-
-    /**
-     * @return the PageId associated with this page.
-     */
-    public HeapPageId getId() {
-        return pid;
+    protected int numSlots() {
+        return numSlots;
     }
 
-    /**
-     * Suck up tuples from the source file.
-     */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
-        }
-        return t;
-    }
-
-    /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p/>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the HeapPage constructor and
-     * have it produce an identical HeapPage object.
-     *
-     * @return A byte array correspond to the bytes of this page.
-     * @see #HeapPage
-     */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i = 0; i < header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        
-        return baos.toByteArray();
+    Field readField(int slotId, int fieldIndex) {
+        int offset = headerSize + slotId * tupleSize + td.getOffset(fieldIndex);
+        return td.getFieldType(fieldIndex).parse(data, offset);
     }
 
     /**
@@ -247,23 +124,15 @@ public class HeapPage implements Page {
      *                     already empty.
      */
     public void deleteTuple(Tuple t) throws DbException {
-        if (t.equals(null)){
-        	throw new DbException("Cannot delete a null tuple.");
+        int slot = slotOf(t);
+        beginWrite();
+        slotCleared(slot, t);
+        markSlotUsed(slot, false);
+        int offset = headerSize + slot * tupleSize;
+        for (int i = 0; i < tupleSize; i++) {
+            data.put(offset + i, (byte) 0);
         }
-        System.out.print(t.toString()+'\n');
-    	for (int i = 0; i < tuples.length; i++){        	
-    		if (tuples[i]==null){
-    			throw new DbException("Tuple slot is already empty.");
-   			}
-			if (tuples[i].equals(t)){
-				tuples[i] = null;
-				markSlotUsed(i,false);
-				//System.out.print(tuples[i].toString()+'\n');
-				System.out.print("Still Running...");
-				return;
-			}
-        }
-        throw new DbException("Given tuple does not exist on the page.");
+        t.setRecordId(null);
     }
 
     /**
@@ -275,92 +144,60 @@ public class HeapPage implements Page {
      *                     is mismatch.
      */
     public void insertTuple(Tuple t) throws DbException {
-    	if (getNumEmptySlots()==0){
-    		throw new DbException("No empty slots in this page.");
-    	}
-    	if (!td.equals(t.getTupleDesc())){
-    		throw new RuntimeException("Invalid TupleDesc.");
-    	}
-    	int pageNum = 0;
-    	while(isSlotUsed(pageNum)){
-    		pageNum++;
-    	}
-    	tuples[pageNum]=t;
-    	t.setRecordId(new RecordId(pid, pageNum));
-    	markSlotUsed(pageNum, true);
-    }
-
-    /**
-     * Marks this page as dirty/not dirty and record that transaction
-     * that did the dirtying
-     */
-    public void markDirty(boolean dirty, TransactionId tid) {
-        this.dirty = dirty;
-        this.tid = tid;
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("Invalid TupleDesc.");
+        }
+        int slot = 0;
+        while (slot < numSlots && isSlotUsed(slot)) {
+            slot++;
+        }
+        if (slot == numSlots) {
+            throw new DbException("No empty slots in this page.");
+        }
+        beginWrite();
+        int offset = headerSize + slot * tupleSize;
+        for (int j = 0; j < td.numFields(); j++) {
+            t.getField(j).serialize(data, offset + td.getOffset(j));
+        }
+        markSlotUsed(slot, true);
+        slotFilled(slot, t);
     }
 
     /**
-     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     * Returns the number of empty slots on this page.
      */
-    public TransactionId isDirty(){
-        if (dirty){
-        	return tid;
+    public int getNumEmptySlots() {
+        int used = 0;
+        for (int i = 0; i < headerSize; i++) {
+            used += Integer.bitCount(data.get(i) & 0xff);
         }
-        return null;
+        return numSlots - used;
     }
 
     /**
-     * Returns the number of empty slots on this page.
+     * Free space on a HeapPage is counted in empty slots.
      */
-    public int getNumEmptySlots() {
-        int j = 0;
-    	for (int i = 0; i < numSlots; i++){
-        	if (! isSlotUsed(i)){
-        		j++;
-        	}
-        }
-    	return j;
+    public int getFreeSpace() {
+        return getNumEmptySlots();
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
-        int bit = i % 8;
-        int byt = i / 8;
-    	if ((header[byt] & (int) Math.pow(2,bit)) != 0){
-    		return true;
-    	}
-    	return false;
+        return (data.get(i >> 3) & (1 << (i & 7))) != 0;
     }
 
     /**
      * Abstraction to fill or clear a slot on this page.
      */
     private void markSlotUsed(int i, boolean value) {
-    	int bit = i % 8;
-    	int byt = i / 8;
-    	if (value){
-    		header[byt] = (byte) ( 1 << bit);
-    	}
-    	else{
-    		header[byt] = (byte) ( 0 << bit);
-    	}
-    	return;
-    }
-
-    /**
-     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
-     * (note that this iterator shouldn't return tuples in empty slots!)
-     */
-    public Iterator<Tuple> iterator() {
-    	LinkedList<Tuple> list = new LinkedList<Tuple>();
-    	for (int i = 0; i < numSlots; i++) {
-        	if (isSlotUsed(i)){
-        		list.add(tuples[i]);
-        	}
+        int b = data.get(i >> 3);
+        if (value) {
+            b |= 1 << (i & 7);
+        } else {
+            b &= ~(1 << (i & 7));
         }
-        return list.iterator();
+        data.put(i >> 3, (byte) b);
     }
 }
-
@@ -36,14 +36,14 @@ public class HeapPageId implements PageId {
     }
 
     /**
-     * @return a hash code for this page, represented by the concatenation of
-     * the table number and the page number (needed if a PageId is used as a
-     * key in a hash table in the BufferPool, for example.)
+     * @return a hash code for this page, combining the table number and the
+     * page number (needed if a PageId is used as a key in a hash table in
+     * the BufferPool, for example.)  Computed without allocating, since the
+     * BufferPool hashes a PageId on every page access.
      * @see BufferPool
      */
     public int hashCode() {
-        String s = pageNum + "-" + tId;
-        return s.hashCode();
+        return 31 * tId + pageNum;
     }
 
     /**
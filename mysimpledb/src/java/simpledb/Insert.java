@@ -1,5 +1,8 @@
 package simpledb;
 
+import java.io.IOException;
+import java.util.ArrayList;
+
 /**
  * Inserts tuples read from the child operator into the tableid specified in the
  * constructor
@@ -8,6 +11,17 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of child tuples handed to BufferPool.insertTuples at a time.
+     */
+    static final int BATCH_SIZE = 4096;
+
+    private final TransactionId tid;
+    private DbIterator child;
+    private final int tableid;
+    private final TupleDesc td;
+    private boolean done;
+
     /**
      * Constructor.
      *
@@ -19,24 +33,33 @@ public class Insert extends Operator {
      */
     public Insert(TransactionId t, DbIterator child, int tableid)
             throws DbException {
-        // some code goes here
+        if (!child.getTupleDesc().equals(Database.getCatalog().getTupleDesc(tableid))) {
+            throw new DbException("TupleDesc of child differs from table.");
+        }
+        this.tid = t;
+        this.child = child;
+        this.tableid = tableid;
+        this.td = new TupleDesc(new Type[]{Type.INT_TYPE});
     }
 
     public TupleDesc getTupleDesc() {
-        // some code goes here
-        return null;
+        return td;
     }
 
     public void open() throws DbException, TransactionAbortedException {
-        // some code goes here
+        child.open();
+        super.open();
+        done = false;
     }
 
     public void close() {
-        // some code goes here
+        super.close();
+        child.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        // some code goes here
+        child.rewind();
+        done = false;
     }
 
     /**
@@ -46,25 +69,49 @@ public class Insert extends Operator {
      * instances of BufferPool is available via Database.getBufferPool(). Note
      * that insert DOES NOT need check to see if a particular tuple is a
      * duplicate before inserting it.
+     * <p/>
+     * Tuples are inserted in batches of BATCH_SIZE through
+     * {@link BufferPool#insertTuples}, so that large inserts fill new pages
+     * in memory and append them to the table in extents.
      *
      * @return A 1-field tuple containing the number of inserted records, or
      * null if called more than once.
      * @see Database#getBufferPool
-     * @see BufferPool#insertTuple
+     * @see BufferPool#insertTuples
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // some code goes here
-        return null;
+        if (done) {
+            return null;
+        }
+        done = true;
+        int count = 0;
+        ArrayList<Tuple> batch = new ArrayList<Tuple>(BATCH_SIZE);
+        while (child.hasNext()) {
+            batch.add(child.next());
+            if (batch.size() == BATCH_SIZE || !child.hasNext()) {
+                try {
+                    Database.getBufferPool().insertTuples(tid, tableid, batch.iterator());
+                } catch (IOException e) {
+                    throw new DbException("Insert failed: " + e.getMessage());
+                }
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        Tuple result = new Tuple(td);
+        result.setField(0, new IntField(count));
+        return result;
     }
 
     @Override
     public DbIterator[] getChildren() {
-        // some code goes here
-        return null;
+        return new DbIterator[]{this.child};
     }
 
     @Override
     public void setChildren(DbIterator[] children) {
-        // some code goes here
+        if (this.child != children[0]) {
+            this.child = children[0];
+        }
     }
 }
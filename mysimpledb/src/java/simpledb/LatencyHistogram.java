@@ -0,0 +1,99 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts operations by duration in power-of-two
+ * buckets of microseconds: bucket 0 holds operations under 1 us, bucket i
+ * those from 2^(i-1) up to 2^i us, and the last bucket everything longer.
+ * <p/>
+ * It records I/O, which takes microseconds at least, so the buckets are
+ * plain atomic counters rather than striped ones.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of buckets; the last one starts at 2^(BUCKETS - 2) us, about
+     * 18 minutes.
+     */
+    public static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    /**
+     * Records an operation that took nanos nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.getAndIncrement(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Returns the number of operations recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean duration of the operations recorded, in
+     * microseconds, 0 if there were none.
+     */
+    public double getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1000.0 / n;
+    }
+
+    /**
+     * Returns the count of each bucket.
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound, in microseconds, on the duration of the
+     * fraction q of the operations recorded that were fastest: the upper
+     * end of the bucket the q-quantile falls in.  Returns 0 if no operation
+     * was recorded.
+     */
+    public long getQuantileMicros(double q) {
+        long[] counts = getBuckets();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * Sets all counts back to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+}
@@ -0,0 +1,812 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LockManager keeps the locks of transactions for the BufferPool, which
+ * takes them in getPage and releases them when a transaction completes
+ * (strict two-phase locking).
+ * <p/>
+ * Locks are taken at two granularities, tables and pages.  Before locking
+ * a page shared or exclusive a transaction takes an intention lock on its
+ * table, IS or IX, which only conflicts with a shared or exclusive lock on
+ * the whole table.  A transaction holding a table lock S or X needs no page
+ * locks on the table for the access it covers.  Once a transaction holds
+ * more page locks on one table than the escalation threshold, they are
+ * traded for a table lock, S, or X if the transaction has written to the
+ * table, so that a large scan holds one lock instead of one per page.
+ * Escalation is only done if the table lock can be granted at once; if
+ * other transactions hold conflicting intention locks, the page locks are
+ * kept and escalation is tried again on the next page.
+ * <p/>
+ * The lock table is a hash table from PageId (or table id) to the lock, so
+ * finding a lock costs the same however many are held; an entry exists
+ * only while the page or table is locked or waited for.  Each lock is
+ * guarded by its own monitor, and a transaction that cannot be granted a
+ * lock waits on that monitor until a release wakes it.
+ * <p/>
+ * A request is granted whenever it is compatible with the modes other
+ * transactions hold: readers never wait for readers.  Exclusive requests
+ * are queued, and granted in arrival order once no other transaction
+ * holds the lock.  A transaction may strengthen a lock it holds, e.g. from
+ * S to X; upgrades to X go to the head of the queue, and are granted as
+ * soon as the upgrading transaction is the only holder left.
+ * <p/>
+ * Deadlocks are found on a waits-for graph with an edge from each waiting
+ * transaction to each transaction it waits for.  The graph is kept only
+ * for transactions that wait: locks granted at once never touch it.  When
+ * a transaction's edges change, the transactions reachable from it are
+ * searched for a cycle back to it, and the youngest transaction of the
+ * cycle (the one with the highest id, which has likely done the least
+ * work) is aborted with a TransactionAbortedException.  A lock timeout may
+ * also be set, after which any waiting transaction is aborted.
+ * <p/>
+ * For readers that take no lock at all, the lock manager also keeps write
+ * words: counters, each shared by the pages (or tables) whose ids hash to
+ * it, that count the exclusive locks held on them and are bumped whenever
+ * one is granted or released.  A reader takes a stamp with
+ * {@link #tryOptimisticRead} when no exclusive lock is held, reads, and
+ * then {@link #validate}s the stamp: if it is unchanged, no transaction was
+ * allowed to write the page meanwhile, so what was read is committed and
+ * consistent.  Pages sharing a word only cause needless retries.
+ *
+ * @Threadsafe
+ */
+public class LockManager {
+
+    /**
+     * Default longest time a transaction waits for a lock before it is
+     * aborted: no limit, since deadlocks are detected.
+     */
+    public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = 0;
+
+    /**
+     * Default number of page locks a transaction may hold on one table
+     * before they are escalated to a table lock.
+     */
+    public static final int DEFAULT_ESCALATION_THRESHOLD = 1000;
+
+    /**
+     * Lock modes.  Pages are only locked S or X.
+     */
+    public enum Mode {
+        /** intention to lock pages of the table shared */
+        IS,
+        /** intention to lock pages of the table exclusive */
+        IX,
+        /** shared */
+        S,
+        /** exclusive */
+        X;
+
+        private static final boolean[][] COMPATIBLE = {
+                //  IS     IX     S      X
+                {true, true, true, false},      // IS
+                {true, true, false, false},     // IX
+                {true, false, true, false},     // S
+                {false, false, false, false},   // X
+        };
+
+        /**
+         * Returns true if two transactions may hold this mode and m on the
+         * same lock.
+         */
+        public boolean isCompatibleWith(Mode m) {
+            return COMPATIBLE[ordinal()][m.ordinal()];
+        }
+
+        /**
+         * Returns true if holding this mode grants everything m does.
+         */
+        public boolean covers(Mode m) {
+            return this == m || this == X || m == IS;
+        }
+
+        /**
+         * Returns the weakest mode covering both this mode and m.
+         */
+        public Mode combine(Mode m) {
+            if (covers(m)) {
+                return this;
+            }
+            return m.covers(this) ? m : X;
+        }
+    }
+
+    private static final Mode[] MODES = Mode.values();
+
+    // number of write words for pages and for tables; powers of two
+    private static final int PAGE_WORDS = 4096;
+    private static final int TABLE_WORDS = 64;
+    // a write word counts exclusive holders in its low bits and changes in
+    // the rest, so that it grows with every grant and release
+    private static final long HOLDERS = 0xFFFF;
+    private static final long CHANGE = HOLDERS + 1;
+
+    /**
+     * The lock on a page or table.
+     */
+    private static final class Lock {
+        // the PageId or Integer table id locked
+        final Object key;
+        // the mode each holder holds
+        final HashMap<TransactionId, Mode> holders = new HashMap<TransactionId, Mode>(4);
+        // number of holders of each mode
+        final int[] counts = new int[MODES.length];
+        // transactions waiting for an exclusive lock, in the order they
+        // are to get it
+        final LinkedList<TransactionId> queue = new LinkedList<TransactionId>();
+        // number of threads waiting on the lock's monitor
+        int waiting;
+        // set once the lock has left the lock table
+        boolean removed;
+
+        Lock(Object key) {
+            this.key = key;
+        }
+
+        boolean isFree() {
+            return holders.isEmpty() && queue.isEmpty() && waiting == 0;
+        }
+
+        boolean covers(TransactionId tid, Mode mode) {
+            Mode held = holders.get(tid);
+            return held != null && held.covers(mode);
+        }
+
+        /**
+         * Returns the mode tid is to hold once it asks for mode.
+         */
+        Mode wanted(TransactionId tid, Mode mode) {
+            Mode held = holders.get(tid);
+            return held == null ? mode : held.combine(mode);
+        }
+
+        boolean canGrant(TransactionId tid, Mode mode) {
+            Mode own = holders.get(tid);
+            for (Mode m : MODES) {
+                int others = counts[m.ordinal()] - (m == own ? 1 : 0);
+                if (others > 0 && !m.isCompatibleWith(mode)) {
+                    return false;
+                }
+            }
+            return mode != Mode.X || queue.isEmpty() || queue.getFirst().equals(tid);
+        }
+
+        /**
+         * Grants tid mode and returns the mode it held before, or null.
+         */
+        Mode grant(TransactionId tid, Mode mode) {
+            Mode own = holders.put(tid, mode);
+            if (own != null) {
+                counts[own.ordinal()]--;
+            }
+            counts[mode.ordinal()]++;
+            return own;
+        }
+
+        /**
+         * Takes tid's lock away and returns the mode it held, or null.
+         */
+        Mode remove(TransactionId tid) {
+            Mode own = holders.remove(tid);
+            if (own != null) {
+                counts[own.ordinal()]--;
+            }
+            return own;
+        }
+    }
+
+    /**
+     * The locks a transaction holds.  Guarded by its own monitor.
+     */
+    private static final class Held {
+        final HashSet<PageId> pages = new HashSet<PageId>();
+        // number of pages in pages of each table
+        final HashMap<Integer, Integer> pagesPerTable = new HashMap<Integer, Integer>();
+        // the mode of each table lock
+        final HashMap<Integer, Mode> tables = new HashMap<Integer, Mode>();
+
+        synchronized Mode tableMode(int tableId) {
+            return tables.get(tableId);
+        }
+    }
+
+    // keyed by PageId for page locks and Integer for table locks
+    private final ConcurrentHashMap<Object, Lock> locks;
+    private final ConcurrentHashMap<TransactionId, Held> held;
+    // the waits-for graph: the transactions each waiting transaction waits
+    // for; sets are never modified once in the map
+    private final ConcurrentHashMap<TransactionId, Set<TransactionId>> waitsFor;
+    // the lock each waiting transaction waits on
+    private final ConcurrentHashMap<TransactionId, Lock> waitingOn;
+    // waiting transactions chosen as deadlock victims, to abort themselves
+    private final Set<TransactionId> victims;
+    private final AtomicLong deadlocks = new AtomicLong();
+    private final AtomicLongArray pageWords = new AtomicLongArray(PAGE_WORDS);
+    private final AtomicLongArray tableWords = new AtomicLongArray(TABLE_WORDS);
+    // incremented by validate; the increment is a full fence
+    private final StripedCounter validations = new StripedCounter();
+    private final AtomicLong escalations = new AtomicLong();
+    private volatile boolean detect = true;
+    private volatile long timeoutMillis = DEFAULT_LOCK_TIMEOUT_MILLIS;
+    private volatile int escalationThreshold = DEFAULT_ESCALATION_THRESHOLD;
+
+    public LockManager() {
+        locks = new ConcurrentHashMap<Object, Lock>(256, 0.75f, BufferPool.STRIPES);
+        held = new ConcurrentHashMap<TransactionId, Held>();
+        waitsFor = new ConcurrentHashMap<TransactionId, Set<TransactionId>>();
+        waitingOn = new ConcurrentHashMap<TransactionId, Lock>();
+        victims = Collections.newSetFromMap(new ConcurrentHashMap<TransactionId, Boolean>());
+    }
+
+    /**
+     * Sets the longest time a transaction waits for a lock before it is
+     * aborted, 0 to wait as long as it takes.
+     */
+    public void setLockTimeout(long millis) {
+        timeoutMillis = millis;
+    }
+
+    /**
+     * Turns deadlock detection on or off.  With detection off, deadlocked
+     * transactions wait until the lock timeout aborts them, so a timeout
+     * must be set.
+     */
+    public void setDeadlockDetection(boolean on) {
+        detect = on;
+    }
+
+    /**
+     * Sets the number of page locks a transaction may hold on one table
+     * before they are escalated to a table lock.
+     *
+     * @throws IllegalArgumentException if threshold is less than 1
+     */
+    public void setEscalationThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("escalation threshold must be positive: " + threshold);
+        }
+        escalationThreshold = threshold;
+    }
+
+    /**
+     * Returns the number of deadlocks found since the lock manager was
+     * created.
+     */
+    public long getDeadlockCount() {
+        return deadlocks.get();
+    }
+
+    /**
+     * Returns the number of times page locks were escalated to a table
+     * lock since the lock manager was created.
+     */
+    public long getEscalationCount() {
+        return escalations.get();
+    }
+
+    /**
+     * Locks pid for tid, shared or exclusive, waiting until the lock can be
+     * granted.  Takes the matching intention lock on the page's table
+     * first, and no page lock if tid's table lock already covers the
+     * access.  Does nothing if tid holds a lock at least as strong.
+     *
+     * @throws TransactionAbortedException if tid was chosen as the victim of
+     *                                     a deadlock, waited longer than the
+     *                                     lock timeout, or the thread was
+     *                                     interrupted
+     */
+    public void acquire(TransactionId tid, PageId pid, boolean exclusive)
+            throws TransactionAbortedException {
+        Mode mode = exclusive ? Mode.X : Mode.S;
+        Integer tableId = pid.getTableId();
+        Held h = heldBy(tid);
+        Mode table = h.tableMode(tableId);
+        if (table == null || !table.covers(exclusive ? Mode.IX : Mode.IS)) {
+            table = lockTable(tid, h, tableId, exclusive ? Mode.IX : Mode.IS);
+        }
+        if (table.covers(mode)) {
+            return;
+        }
+        lock(tid, pid, mode);
+        int n;
+        synchronized (h) {
+            if (!h.pages.add(pid)) {
+                return;
+            }
+            Integer count = h.pagesPerTable.get(tableId);
+            n = count == null ? 1 : count + 1;
+            h.pagesPerTable.put(tableId, n);
+        }
+        if (n > escalationThreshold) {
+            escalate(tid, h, tableId);
+        }
+    }
+
+    /**
+     * Locks the table tableId for tid in mode, waiting until the lock can be
+     * granted, and returns the mode tid then holds the table in.  A table
+     * lock S or X makes page locks on the table unnecessary.
+     *
+     * @throws TransactionAbortedException if tid was chosen as the victim of
+     *                                     a deadlock, waited longer than the
+     *                                     lock timeout, or the thread was
+     *                                     interrupted
+     */
+    public Mode acquireTable(TransactionId tid, int tableId, Mode mode)
+            throws TransactionAbortedException {
+        return lockTable(tid, heldBy(tid), tableId, mode);
+    }
+
+    private Mode lockTable(TransactionId tid, Held h, Integer tableId, Mode mode)
+            throws TransactionAbortedException {
+        Mode granted = lock(tid, tableId, mode);
+        synchronized (h) {
+            h.tables.put(tableId, granted);
+        }
+        return granted;
+    }
+
+    /**
+     * Trades tid's page locks on tableId for a table lock, if it can be
+     * granted without waiting.
+     */
+    private void escalate(TransactionId tid, Held h, Integer tableId) {
+        Mode table = h.tableMode(tableId);
+        Mode mode = table != null && table.covers(Mode.IX) ? Mode.X : Mode.S;
+        Lock l = lockOf(tableId);
+        synchronized (l) {
+            if (l.removed) {
+                return;
+            }
+            Mode want = l.wanted(tid, mode);
+            if (!l.canGrant(tid, want)) {
+                return;
+            }
+            grant(l, tid, want);
+            mode = want;
+        }
+        ArrayList<PageId> released = new ArrayList<PageId>();
+        synchronized (h) {
+            h.tables.put(tableId, mode);
+            for (Iterator<PageId> it = h.pages.iterator(); it.hasNext(); ) {
+                PageId pid = it.next();
+                if (pid.getTableId() == tableId) {
+                    released.add(pid);
+                    it.remove();
+                }
+            }
+            h.pagesPerTable.remove(tableId);
+        }
+        for (PageId pid : released) {
+            unlock(tid, pid);
+        }
+        escalations.incrementAndGet();
+    }
+
+    private Held heldBy(TransactionId tid) {
+        Held h = held.get(tid);
+        if (h == null) {
+            Held fresh = new Held();
+            h = held.putIfAbsent(tid, fresh);
+            if (h == null) {
+                h = fresh;
+            }
+        }
+        return h;
+    }
+
+    private Lock lockOf(Object key) {
+        Lock l = locks.get(key);
+        if (l == null) {
+            Lock fresh = new Lock(key);
+            l = locks.putIfAbsent(key, fresh);
+            if (l == null) {
+                l = fresh;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Grants tid mode on l, counting a new exclusive holder in l's write
+     * word.  Called holding l's monitor.
+     */
+    private void grant(Lock l, TransactionId tid, Mode mode) {
+        if (l.grant(tid, mode) != Mode.X && mode == Mode.X) {
+            words(l.key).addAndGet(slot(l.key), CHANGE + 1);
+        }
+    }
+
+    private AtomicLongArray words(Object key) {
+        return key instanceof PageId ? pageWords : tableWords;
+    }
+
+    private static int slot(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h >>> 20) & ((key instanceof PageId ? PAGE_WORDS : TABLE_WORDS) - 1);
+    }
+
+    /**
+     * Locks key for tid in mode, waiting until the lock can be granted, and
+     * returns the mode tid then holds.
+     */
+    private Mode lock(TransactionId tid, Object key, Mode mode) throws TransactionAbortedException {
+        Lock l = lockOf(key);
+        synchronized (l) {
+            Mode want = l.wanted(tid, mode);
+            if (l.covers(tid, want)) {
+                return want;
+            }
+            if (!l.removed && l.canGrant(tid, want)) {
+                grant(l, tid, want);
+                return want;
+            }
+        }
+        return waitFor(l, tid, mode);
+    }
+
+    /**
+     * Waits until tid can be granted mode on l's key, then grants it.
+     * <p/>
+     * Whenever the set of transactions tid waits for changes, its edges in
+     * the waits-for graph are replaced and the graph is searched for a cycle
+     * through tid.  The search runs without holding any lock monitor, so
+     * that aborting a victim waiting on another lock cannot deadlock with a
+     * search running there.
+     */
+    private Mode waitFor(Lock l, TransactionId tid, Mode mode)
+            throws TransactionAbortedException {
+        long timeout = timeoutMillis;
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        boolean queued = false;
+        Set<TransactionId> edges = null;
+        try {
+            while (true) {
+                synchronized (l) {
+                    if (l.removed) {
+                        // released and dropped since we looked it up
+                        if (queued) {
+                            l.queue.remove(tid);
+                            queued = false;
+                        }
+                        l = lockOf(l.key);
+                        edges = null;
+                        continue;
+                    }
+                    Mode want = l.wanted(tid, mode);
+                    if (want == Mode.X && !queued) {
+                        // upgrades go first: they block everything queued
+                        if (l.holders.containsKey(tid)) {
+                            l.queue.addFirst(tid);
+                        } else {
+                            l.queue.addLast(tid);
+                        }
+                        queued = true;
+                    }
+                    if (l.canGrant(tid, want)) {
+                        grant(l, tid, want);
+                        return want;
+                    }
+                    if (victims.remove(tid)) {
+                        throw new TransactionAbortedException();
+                    }
+                    Set<TransactionId> blockers = detect ? blockers(l, tid, want) : null;
+                    if (blockers == null || blockers.equals(edges)) {
+                        l.waiting++;
+                        try {
+                            await(l, deadline);
+                        } finally {
+                            l.waiting--;
+                        }
+                        continue;
+                    }
+                    edges = blockers;
+                    waitingOn.put(tid, l);
+                    waitsFor.put(tid, blockers);
+                }
+                abortVictim(findCycle(tid));
+            }
+        } finally {
+            waitsFor.remove(tid);
+            waitingOn.remove(tid);
+            victims.remove(tid);
+            synchronized (l) {
+                if (queued) {
+                    l.queue.remove(tid);
+                    // the next request in the queue may be grantable now
+                    l.notifyAll();
+                }
+                if (!l.holders.containsKey(tid)) {
+                    dropIfFree(l);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the transactions tid waits for to be granted mode on l.
+     * Called holding l's monitor.
+     */
+    private static Set<TransactionId> blockers(Lock l, TransactionId tid, Mode mode) {
+        HashSet<TransactionId> blockers = new HashSet<TransactionId>();
+        for (Map.Entry<TransactionId, Mode> e : l.holders.entrySet()) {
+            if (!e.getValue().isCompatibleWith(mode)) {
+                blockers.add(e.getKey());
+            }
+        }
+        if (mode == Mode.X) {
+            for (TransactionId t : l.queue) {
+                if (t.equals(tid)) {
+                    break;
+                }
+                blockers.add(t);
+            }
+        }
+        blockers.remove(tid);
+        return blockers;
+    }
+
+    /**
+     * Searches the waits-for graph for a cycle through tid and returns the
+     * transactions on it, or null if there is none.  Only edges reachable
+     * from tid are visited: a new cycle must run through the transaction
+     * whose edges just changed.
+     */
+    private List<TransactionId> findCycle(TransactionId tid) {
+        LinkedList<TransactionId> path = new LinkedList<TransactionId>();
+        LinkedList<Iterator<TransactionId>> next = new LinkedList<Iterator<TransactionId>>();
+        HashSet<TransactionId> visited = new HashSet<TransactionId>();
+        Set<TransactionId> out = waitsFor.get(tid);
+        if (out == null) {
+            return null;
+        }
+        path.add(tid);
+        next.add(out.iterator());
+        visited.add(tid);
+        while (!next.isEmpty()) {
+            Iterator<TransactionId> it = next.getLast();
+            if (!it.hasNext()) {
+                next.removeLast();
+                path.removeLast();
+                continue;
+            }
+            TransactionId t = it.next();
+            if (t.equals(tid)) {
+                return path;
+            }
+            if (visited.add(t)) {
+                out = waitsFor.get(t);
+                if (out != null) {
+                    path.add(t);
+                    next.add(out.iterator());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Aborts the youngest transaction of cycle, if not null: the one that
+     * has done the least work.  A victim waiting on another lock is woken
+     * and throws on its own thread.
+     */
+    private void abortVictim(List<TransactionId> cycle) throws TransactionAbortedException {
+        if (cycle == null) {
+            return;
+        }
+        TransactionId victim = cycle.get(0);
+        for (TransactionId t : cycle) {
+            if (t.getId() > victim.getId()) {
+                victim = t;
+            }
+        }
+        // other transactions of the cycle may have found it too
+        if (victim.equals(cycle.get(0))) {
+            if (!victims.remove(victim)) {
+                deadlocks.incrementAndGet();
+            }
+            throw new TransactionAbortedException();
+        }
+        Lock l = waitingOn.get(victim);
+        if (l != null && victims.add(victim)) {
+            deadlocks.incrementAndGet();
+            synchronized (l) {
+                l.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits on l's monitor, held by the caller, until notified or the
+     * deadline passes.
+     *
+     * @throws TransactionAbortedException if the deadline passed or the
+     *                                     thread was interrupted
+     */
+    private static void await(Lock l, long deadline) throws TransactionAbortedException {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+            throw new TransactionAbortedException();
+        }
+        try {
+            l.wait(left);
+        } catch (InterruptedException e) {
+            throw new TransactionAbortedException();
+        }
+    }
+
+    /**
+     * Removes l from the lock table if no transaction holds or waits for
+     * it, and returns true if it did.  Called holding l's monitor.
+     */
+    private boolean dropIfFree(Lock l) {
+        if (!l.isFree()) {
+            return false;
+        }
+        l.removed = true;
+        locks.remove(l.key, l);
+        return true;
+    }
+
+    /**
+     * Releases tid's lock on pid, if it holds one, and wakes the
+     * transactions waiting for the page.  Table locks are kept until
+     * {@link #releaseAll}.
+     */
+    public void release(TransactionId tid, PageId pid) {
+        Held h = held.get(tid);
+        if (h != null) {
+            synchronized (h) {
+                if (h.pages.remove(pid)) {
+                    Integer tableId = pid.getTableId();
+                    h.pagesPerTable.put(tableId, h.pagesPerTable.get(tableId) - 1);
+                }
+            }
+        }
+        unlock(tid, pid);
+    }
+
+    private void unlock(TransactionId tid, Object key) {
+        Lock l = locks.get(key);
+        if (l == null) {
+            return;
+        }
+        synchronized (l) {
+            Mode own = l.remove(tid);
+            if (own == null) {
+                return;
+            }
+            if (own == Mode.X) {
+                words(key).addAndGet(slot(key), CHANGE - 1);
+            }
+            if (!dropIfFree(l)) {
+                l.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Releases all locks held by tid.
+     */
+    public void releaseAll(TransactionId tid) {
+        victims.remove(tid);
+        Held h = held.remove(tid);
+        if (h == null) {
+            return;
+        }
+        synchronized (h) {
+            for (PageId pid : h.pages) {
+                unlock(tid, pid);
+            }
+            for (Integer tableId : h.tables.keySet()) {
+                unlock(tid, tableId);
+            }
+        }
+    }
+
+    /**
+     * Returns true if tid may read pid: it holds a lock on the page, or a
+     * table lock S or X on its table.
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        return holds(tid, pid, Mode.S);
+    }
+
+    /**
+     * Returns true if tid may write pid: it holds an exclusive lock on the
+     * page or its table.
+     */
+    public boolean holdsExclusive(TransactionId tid, PageId pid) {
+        return holds(tid, pid, Mode.X);
+    }
+
+    private boolean holds(TransactionId tid, PageId pid, Mode mode) {
+        Held h = held.get(tid);
+        if (h == null) {
+            return false;
+        }
+        Mode table = h.tableMode(pid.getTableId());
+        if (table != null && table.covers(mode)) {
+            return true;
+        }
+        Lock l = locks.get(pid);
+        if (l == null) {
+            return false;
+        }
+        synchronized (l) {
+            return l.covers(tid, mode);
+        }
+    }
+
+    /**
+     * Returns a stamp for reading pid without a lock, to be checked with
+     * {@link #validate} once the read is done, or -1 if a transaction may
+     * be writing the page: it (or a page sharing its write word) or its
+     * table is locked exclusively.
+     */
+    public long tryOptimisticRead(PageId pid) {
+        Integer tableId = pid.getTableId();
+        long page = pageWords.get(slot(pid));
+        long table = tableWords.get(slot(tableId));
+        if ((page & HOLDERS) != 0 || (table & HOLDERS) != 0) {
+            return -1;
+        }
+        // both words only grow, so their sum changes with either
+        return page + table;
+    }
+
+    /**
+     * Returns true if no exclusive lock on pid or its table was granted
+     * since stamp was returned by tryOptimisticRead, so that what was read
+     * of the page in between was committed and consistent.
+     */
+    public boolean validate(PageId pid, long stamp) {
+        // a full fence, so that the reads being validated are done first
+        validations.increment();
+        Integer tableId = pid.getTableId();
+        return pageWords.get(slot(pid)) + tableWords.get(slot(tableId)) == stamp;
+    }
+
+    /**
+     * Returns the number of optimistic reads validated since the lock
+     * manager was created.
+     */
+    public long getValidationCount() {
+        return validations.get();
+    }
+
+    /**
+     * Returns the mode tid holds the table tableId in, or null if it holds
+     * no lock on it.
+     */
+    public Mode getTableLock(TransactionId tid, int tableId) {
+        Held h = held.get(tid);
+        return h == null ? null : h.tableMode(tableId);
+    }
+
+    /**
+     * Returns the pages tid holds page locks on.
+     */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        Held h = held.get(tid);
+        if (h == null) {
+            return Collections.emptySet();
+        }
+        synchronized (h) {
+            return Collections.unmodifiableSet(new HashSet<PageId>(h.pages));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used page.  Simple and effective for workloads
+ * with locality, but a scan of a table larger than the pool evicts every
+ * other page.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    // cached pages, from least to most recently used
+    private final LinkedHashMap<PageId, Boolean> pages =
+            new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    public void setCapacity(int numPages) {
+    }
+
+    public void pageHit(PageId pid) {
+        pages.get(pid);
+    }
+
+    public void pageAdded(PageId pid) {
+        pages.put(pid, Boolean.TRUE);
+    }
+
+    public void pageRemoved(PageId pid) {
+        pages.remove(pid);
+    }
+
+    /**
+     * The page goes back as the most recently used: it was chosen as the
+     * least recently used, and is kept because it is in use.
+     */
+    public void victimKept(PageId pid) {
+        pages.put(pid, Boolean.TRUE);
+    }
+
+    public PageId chooseVictim(PageId incoming) {
+        Iterator<PageId> it = pages.keySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        PageId victim = it.next();
+        it.remove();
+        return victim;
+    }
+}
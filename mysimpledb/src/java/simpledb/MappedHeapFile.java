@@ -0,0 +1,143 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read through memory-mapped
+ * regions of the underlying file instead of explicit read calls.  Pages are
+ * handed to HeapPage as read-only slices of the mapping, so a page that is
+ * already in the OS page cache is fetched without a system call or an
+ * intermediate copy.  This suits read-mostly tables; the on-disk format is
+ * identical to HeapFile's.
+ * <p/>
+ * The file is mapped in regions of {@link #REGION_PAGES} pages.  Only whole
+ * pages that exist on disk are ever mapped (mapping past the end of the file
+ * would grow it), so when insertTuple appends a page the new page is written
+ * through the file channel and the last region is remapped the next time it
+ * is read.  writePage stores dirty pages into the mapping without forcing
+ * it, like HeapFile's writes through the channel; close forces the mapped
+ * regions to disk.
+ *
+ * @see HeapFile
+ */
+public class MappedHeapFile extends HeapFile {
+
+    /**
+     * Number of pages covered by each mapped region.
+     */
+    public static final int REGION_PAGES = 256;
+
+    // regions[r] maps pages starting at r * REGION_PAGES; replaced (never
+    // modified in place) under the lock so readers can use it without one
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /**
+     * Constructs a memory-mapped heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * Returns the mapped region holding page pgNo, mapping or remapping it
+     * if the page lies beyond what is currently mapped.  Returns null if the
+     * page does not exist on disk yet.
+     */
+    private MappedByteBuffer regionFor(int pgNo) throws IOException {
+        int r = pgNo / REGION_PAGES;
+        MappedByteBuffer[] current = regions;
+        if (r < current.length && covers(current[r], pgNo)) {
+            return current[r];
+        }
+        synchronized (this) {
+            current = regions;
+            if (r < current.length && covers(current[r], pgNo)) {
+                return current[r];
+            }
+            int pageSize = BufferPool.getPageSize();
+            int firstPage = r * REGION_PAGES;
+            int mappedPages = Math.min(REGION_PAGES, numPages() - firstPage);
+            if (mappedPages <= pgNo - firstPage) {
+                return null;
+            }
+            MappedByteBuffer region = getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    (long) firstPage * pageSize, (long) mappedPages * pageSize);
+            MappedByteBuffer[] updated = Arrays.copyOf(current, Math.max(current.length, r + 1));
+            updated[r] = region;
+            regions = updated;
+            return region;
+        }
+    }
+
+    private static boolean covers(MappedByteBuffer region, int pgNo) {
+        return region != null && region.capacity() / BufferPool.getPageSize() > pgNo % REGION_PAGES;
+    }
+
+    /**
+     * Returns a buffer spanning exactly page pgNo within region.  The
+     * region's own position and limit are never modified, so this is safe to
+     * call from concurrent readers.
+     */
+    private static ByteBuffer pageSlice(MappedByteBuffer region, int pgNo) {
+        int pageSize = BufferPool.getPageSize();
+        int offset = (pgNo % REGION_PAGES) * pageSize;
+        ByteBuffer dup = region.duplicate();
+        dup.position(offset);
+        dup.limit(offset + pageSize);
+        return dup.slice();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (pid.pageNumber() > numPages()) {
+            throw new IllegalArgumentException("Page number out of bounds.");
+        }
+        try {
+            MappedByteBuffer region = regionFor(pid.pageNumber());
+            if (region == null) {
+                // page just past the end of the file; nothing to map
+                return super.readPage(pid);
+            }
+            return createPage((HeapPageId) pid, pageSlice(region, pid.pageNumber()).asReadOnlyBuffer());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int pgNo = page.getId().pageNumber();
+        MappedByteBuffer region = regionFor(pgNo);
+        if (region == null) {
+            // growing the file: extend it through the channel, the region
+            // is remapped on the next read
+            super.writePage(page);
+            return;
+        }
+        pageSlice(region, pgNo).put(page.getPageData());
+        pageWritten(page);
+    }
+
+    /**
+     * Forces the mapped regions to disk, drops all mappings and closes the
+     * channel backing this file.
+     */
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer region : regions) {
+            if (region != null) {
+                region.force();
+            }
+        }
+        regions = new MappedByteBuffer[0];
+        super.close();
+    }
+}
@@ -0,0 +1,17 @@
+package simpledb;
+
+/**
+ * PageReader reads what it needs out of one page, for
+ * {@link BufferPool#readOptimistic}.  The page may be changed by a writer
+ * while it is read, in which case the result is thrown away and the page
+ * read again; so read may see inconsistent contents or throw, must not
+ * change the page or anything else, and must copy out the values it
+ * returns rather than return tuples of the page, which decode their fields
+ * lazily.
+ */
+public interface PageReader<T> {
+    /**
+     * Reads p and returns the result.
+     */
+    public T read(Page p) throws DbException;
+}
@@ -0,0 +1,98 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A PageSetSnapshot is the list of pages resident in a BufferPool at some
+ * point, with how hot each one was, saved so that a restarted pool can read
+ * the same pages back in (see {@link BufferPool#savePageSet} and
+ * {@link BufferPool#prefetchPageSet}).
+ * <p/>
+ * The file holds a magic number and an entry count, followed by three ints
+ * per entry: table id, page number and heat.  It is written to a temporary
+ * file renamed over the previous snapshot, so a crash while saving leaves
+ * the previous snapshot in place.
+ */
+class PageSetSnapshot {
+
+    private static final int MAGIC = 0x50475331;
+
+    final int[] tableIds;
+    final int[] pageNumbers;
+    final int[] heats;
+
+    PageSetSnapshot(int[] tableIds, int[] pageNumbers, int[] heats) {
+        this.tableIds = tableIds;
+        this.pageNumbers = pageNumbers;
+        this.heats = heats;
+    }
+
+    int size() {
+        return tableIds.length;
+    }
+
+    /**
+     * Writes the snapshot to f.
+     */
+    void write(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeInt(tableIds[i]);
+                out.writeInt(pageNumbers[i]);
+                out.writeInt(heats[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(f)) {
+            // renameTo does not replace an existing file everywhere
+            f.delete();
+            if (!tmp.renameTo(f)) {
+                throw new IOException("Could not rename " + tmp + " to " + f);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write.
+     *
+     * @throws IOException if f cannot be read or is not a snapshot
+     */
+    static PageSetSnapshot read(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(f + " is not a page set snapshot");
+            }
+            int n = in.readInt();
+            if (n < 0 || (long) n * 12 > f.length()) {
+                throw new IOException(f + " is truncated");
+            }
+            int[] tableIds = new int[n];
+            int[] pageNumbers = new int[n];
+            int[] heats = new int[n];
+            for (int i = 0; i < n; i++) {
+                tableIds[i] = in.readInt();
+                pageNumbers[i] = in.readInt();
+                heats[i] = in.readInt();
+            }
+            return new PageSetSnapshot(tableIds, pageNumbers, heats);
+        } catch (EOFException e) {
+            throw new IOException(f + " is truncated");
+        } finally {
+            in.close();
+        }
+    }
+}
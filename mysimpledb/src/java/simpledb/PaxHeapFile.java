@@ -0,0 +1,30 @@
+package simpledb;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxHeapFile is a HeapFile made of {@link PaxHeapPage}s, which store each
+ * column of a page contiguously.  It suits analytic tables whose queries
+ * read one or two of many columns.  Select it by ending the table's line
+ * in the catalog file with "pax"; files are built with
+ * {@link HeapFileEncoder#convertPax}.
+ *
+ * @see PaxHeapPage
+ */
+public class PaxHeapFile extends HeapFile {
+
+    /**
+     * Constructs a PAX heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public PaxHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new PaxHeapPage(pid, data);
+    }
+}
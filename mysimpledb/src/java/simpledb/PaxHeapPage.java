@@ -0,0 +1,174 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PaxHeapPage is a column-major ("PAX") page format for analytic tables.
+ * It holds the same number of tuples as a HeapPage, with the same header
+ * bitmap of used slots, but after the header each column is stored
+ * contiguously: all values of field 0, then all values of field 1, and so
+ * on.  A scan that evaluates a predicate on one column reads only that
+ * column's bytes, in order.
+ * <p/>
+ * For a page of n slots the values of field i start at
+ * <pre>
+ * headerSize + n * td.getOffset(i)
+ * </pre>
+ * and the value for slot s is at that offset plus s times the field's
+ * length.  Values are encoded as in a HeapPage.  Because only the order of
+ * the bytes differs from a HeapPage, a HeapPage image converts to a
+ * PaxHeapPage image with {@link #fromHeapPageData}.
+ *
+ * @see PaxHeapFile
+ */
+public class PaxHeapPage extends TuplePage {
+
+    final int numSlots;
+    final int headerSize;
+    // offset of the first value of each column
+    private final int[] columnStart;
+
+    /**
+     * Create a PaxHeapPage over the page image held in data.  As for
+     * {@link HeapPage#HeapPage(HeapPageId, ByteBuffer)}, the buffer is not
+     * copied, and is copied on the first modification if it is read-only.
+     */
+    public PaxHeapPage(HeapPageId id, ByteBuffer data) {
+        super(id, data);
+        this.numSlots = (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        this.headerSize = (numSlots + 7) / 8;
+        this.columnStart = columnStarts(td, numSlots, headerSize);
+    }
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) {
+        this(id, ByteBuffer.wrap(data).asReadOnlyBuffer());
+    }
+
+    private static int[] columnStarts(TupleDesc td, int numSlots, int headerSize) {
+        int[] starts = new int[td.numFields()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = headerSize + numSlots * td.getOffset(i);
+        }
+        return starts;
+    }
+
+    /**
+     * Return a view of this page before it was modified
+     * -- used by recovery
+     */
+    public PaxHeapPage getBeforeImage() {
+        return new PaxHeapPage(pid, getBeforeImageData());
+    }
+
+    protected int numSlots() {
+        return numSlots;
+    }
+
+    private int valueOffset(int slot, int field) {
+        return columnStart[field] + slot * td.getFieldType(field).getLen();
+    }
+
+    Field readField(int slotId, int fieldIndex) {
+        return td.getFieldType(fieldIndex).parse(data, valueOffset(slotId, fieldIndex));
+    }
+
+    /**
+     * Returns the int stored in field of slot, without creating a Field.
+     * Together with {@link #isSlotUsed} this lets a scan run a tight loop
+     * over one int column.
+     */
+    public int getInt(int slot, int field) {
+        return data.getInt(valueOffset(slot, field));
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int used = 0;
+        for (int i = 0; i < headerSize; i++) {
+            used += Integer.bitCount(data.get(i) & 0xff);
+        }
+        return numSlots - used;
+    }
+
+    /**
+     * Free space on a PaxHeapPage is counted in empty slots, as on a
+     * HeapPage.
+     */
+    public int getFreeSpace() {
+        return getNumEmptySlots();
+    }
+
+    public boolean isSlotUsed(int i) {
+        return (data.get(i >> 3) & (1 << (i & 7))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        int b = data.get(i >> 3);
+        if (value) {
+            b |= 1 << (i & 7);
+        } else {
+            b &= ~(1 << (i & 7));
+        }
+        data.put(i >> 3, (byte) b);
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("Invalid TupleDesc.");
+        }
+        int slot = 0;
+        while (slot < numSlots && isSlotUsed(slot)) {
+            slot++;
+        }
+        if (slot == numSlots) {
+            throw new DbException("No empty slots in this page.");
+        }
+        beginWrite();
+        for (int j = 0; j < td.numFields(); j++) {
+            t.getField(j).serialize(data, valueOffset(slot, j));
+        }
+        markSlotUsed(slot, true);
+        slotFilled(slot, t);
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = slotOf(t);
+        beginWrite();
+        slotCleared(slot, t);
+        markSlotUsed(slot, false);
+        for (int j = 0; j < td.numFields(); j++) {
+            int offset = valueOffset(slot, j);
+            for (int i = 0; i < td.getFieldType(j).getLen(); i++) {
+                data.put(offset + i, (byte) 0);
+            }
+        }
+        t.setRecordId(null);
+    }
+
+    /**
+     * Rearranges the image of a HeapPage of tuples described by td into
+     * the image of the equivalent PaxHeapPage: same header, same slots, the
+     * values regrouped by column.
+     */
+    public static byte[] fromHeapPageData(byte[] rowPage, TupleDesc td) {
+        int tupleSize = td.getSize();
+        int numSlots = (rowPage.length * 8) / (tupleSize * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        int[] starts = columnStarts(td, numSlots, headerSize);
+        byte[] page = new byte[rowPage.length];
+        System.arraycopy(rowPage, 0, page, 0, headerSize);
+        for (int j = 0; j < td.numFields(); j++) {
+            int len = td.getFieldType(j).getLen();
+            for (int s = 0; s < numSlots; s++) {
+                System.arraycopy(rowPage, headerSize + s * tupleSize + td.getOffset(j),
+                        page, starts[j] + s * len, len);
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,51 @@
+package simpledb;
+
+/**
+ * A ScanRing is a small set of buffer pool frames private to one large
+ * scan.  Pages the scan reads go into the ring, and once the ring is full
+ * each new page replaces the oldest one in it instead of evicting a page
+ * chosen by the pool's eviction policy.  A scan of a table larger than the
+ * pool thus uses only a few frames and leaves the rest of the working set
+ * alone.
+ * <p/>
+ * Ring pages live in the buffer pool like any other page and are visible
+ * to every transaction.  When one of them is requested without the ring
+ * (e.g. to update it) it leaves the ring and becomes an ordinary page.
+ *
+ * @see BufferPool#getScanRing
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, ScanRing)
+ */
+public class ScanRing {
+
+    // pages read into the ring, oldest at next once the ring is full; some
+    // may have left the ring since
+    private final PageId[] slots;
+    private int next;
+
+    ScanRing(int size) {
+        slots = new PageId[size];
+    }
+
+    /**
+     * Returns the number of frames in this ring.
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the page whose slot the next page read will take, or null if
+     * the ring is not full yet.
+     */
+    PageId oldest() {
+        return slots[next];
+    }
+
+    /**
+     * Records pid as the newest page of the ring, replacing the oldest.
+     */
+    void add(PageId pid) {
+        slots[next] = pid;
+        next = (next + 1) % slots.length;
+    }
+}
@@ -8,7 +8,7 @@ public class SimpleDb {
         // convert a file
         if (args[0].equals("convert")) {
             try {
-                if (args.length < 3 || args.length > 5) {
+                if (args.length < 3 || args.length > 6) {
                     System.err.println("Unexpected number of arguments to convert ");
                     return;
                 }
@@ -17,6 +17,7 @@ public class SimpleDb {
                 int numOfAttributes = Integer.parseInt(args[2]);
                 Type[] ts = new Type[numOfAttributes];
                 char fieldSeparator = ',';
+                String storage = "";
 
                 if (args.length == 3)
                     for (int i = 0; i < numOfAttributes; i++)
@@ -39,12 +40,32 @@ public class SimpleDb {
                             return;
                         }
                     }
-                    if (args.length == 5)
+                    if (args.length >= 5)
                         fieldSeparator = args[4].charAt(0);
+                    if (args.length == 6)
+                        storage = args[5].toLowerCase();
                 }
 
-                HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                        BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                if (storage.equals("slotted"))
+                    HeapFileEncoder.convertSlotted(sourceTxtFile, targetDatFile,
+                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                else if (storage.equals("pax"))
+                    HeapFileEncoder.convertPax(sourceTxtFile, targetDatFile,
+                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                else if (storage.equals("compressed"))
+                    HeapFileEncoder.convertCompressed(sourceTxtFile, targetDatFile,
+                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                else if (storage.equals("") || storage.equals("mapped")) {
+                    long start = System.currentTimeMillis();
+                    long rows = ParallelHeapFileEncoder.convert(sourceTxtFile, targetDatFile,
+                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                    double secs = Math.max(System.currentTimeMillis() - start, 1) / 1000.0;
+                    System.out.printf("Converted %d rows in %.1f s (%.0f rows/s)%n", rows, secs, rows / secs);
+                }
+                else {
+                    System.err.println("Unknown storage format " + storage);
+                    return;
+                }
 
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -0,0 +1,260 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapPage is a page format for tables with string columns.  A
+ * HeapPage reserves Type.STRING_LEN bytes for every string; a slotted page
+ * stores each string in only as many bytes as it has, so rows of short
+ * strings take a fraction of the space.
+ * <p/>
+ * The page starts with a header of two unsigned shorts: the number of
+ * entries in the slot directory, and the number of bytes taken by records.
+ * The slot directory follows the header, one entry per slot made of the
+ * offset of the slot's record within the page and the record's length
+ * (both unsigned shorts; an offset of 0 marks an empty slot).  Records are
+ * packed against the end of the page and grow towards the directory:
+ * <pre>
+ * | nslots | recbytes | off0 len0 | off1 len1 | ... free ... | rec1 | rec0 |
+ * </pre>
+ * A record holds its fields in order: an int is 4 bytes, a string is an
+ * unsigned short length followed by one byte per character.  Deleting a
+ * record slides the records below it up to close the gap, so the free space
+ * is always contiguous.  Slot numbers (and so RecordIds) do not change when
+ * records move; only the directory entries do.  An all-zero page is an
+ * empty slotted page, so {@link HeapPage#createEmptyPageData()} serves for
+ * both formats.
+ * <p/>
+ * Offsets are stored as unsigned shorts, so pages may be at most 64KB.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage extends TuplePage {
+
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    /**
+     * Create a SlottedHeapPage over the page image held in data.  As for
+     * {@link HeapPage#HeapPage(HeapPageId, ByteBuffer)}, the buffer is not
+     * copied, and is copied on the first modification if it is read-only.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) {
+        super(id, data);
+    }
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) {
+        this(id, ByteBuffer.wrap(data).asReadOnlyBuffer());
+    }
+
+    /**
+     * Return a view of this page before it was modified
+     * -- used by recovery
+     */
+    public SlottedHeapPage getBeforeImage() {
+        return new SlottedHeapPage(pid, getBeforeImageData());
+    }
+
+    protected int numSlots() {
+        return getShort(data, 0);
+    }
+
+    private static int getShort(ByteBuffer buf, int offset) {
+        return buf.getShort(offset) & 0xffff;
+    }
+
+    private static void putShort(ByteBuffer buf, int offset, int value) {
+        buf.putShort(offset, (short) value);
+    }
+
+    private static int slotOffset(ByteBuffer buf, int slot) {
+        return getShort(buf, HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private static int slotLength(ByteBuffer buf, int slot) {
+        return getShort(buf, HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private static void setSlot(ByteBuffer buf, int slot, int offset, int length) {
+        putShort(buf, HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putShort(buf, HEADER_SIZE + slot * SLOT_SIZE + 2, length);
+    }
+
+    /**
+     * Returns the number of free bytes between the slot directory and the
+     * records of the page image in buf.
+     */
+    private static int freeBytes(ByteBuffer buf) {
+        return buf.capacity() - getShort(buf, 2) - HEADER_SIZE - getShort(buf, 0) * SLOT_SIZE;
+    }
+
+    public boolean isSlotUsed(int i) {
+        return i < numSlots() && slotOffset(data, i) != 0;
+    }
+
+    Field readField(int slotId, int fieldIndex) {
+        int offset = slotOffset(data, slotId);
+        for (int i = 0; i < fieldIndex; i++) {
+            offset += td.getFieldType(i) == Type.INT_TYPE ? 4 : 2 + getShort(data, offset);
+        }
+        if (td.getFieldType(fieldIndex) == Type.INT_TYPE) {
+            return new IntField(data.getInt(offset));
+        }
+        byte bs[] = new byte[getShort(data, offset)];
+        for (int i = 0; i < bs.length; i++) {
+            bs[i] = data.get(offset + 2 + i);
+        }
+        return new StringField(new String(bs), Type.STRING_LEN);
+    }
+
+    /**
+     * Returns the number of bytes the record holding fields takes on a
+     * slotted page, not counting its slot directory entry.
+     */
+    static int recordSize(Field[] fields) {
+        int size = 0;
+        for (Field f : fields) {
+            if (f.getType() == Type.INT_TYPE) {
+                size += 4;
+            } else {
+                size += 2 + Math.min(((StringField) f).getValue().length(), Type.STRING_LEN);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the space (in bytes, including a new slot directory entry)
+     * needed to store t on a slotted page.
+     */
+    public static int spaceNeeded(Tuple t) {
+        return recordSize(fieldsOf(t)) + SLOT_SIZE;
+    }
+
+    private static Field[] fieldsOf(Tuple t) {
+        Field[] fields = new Field[t.getTupleDesc().numFields()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = t.getField(i);
+        }
+        return fields;
+    }
+
+    private static void writeRecord(ByteBuffer buf, int offset, Field[] fields) {
+        for (Field f : fields) {
+            if (f.getType() == Type.INT_TYPE) {
+                buf.putInt(offset, ((IntField) f).getValue());
+                offset += 4;
+            } else {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                putShort(buf, offset, len);
+                for (int i = 0; i < len; i++) {
+                    // same truncation to the low byte as StringField.serialize
+                    buf.put(offset + 2 + i, (byte) s.charAt(i));
+                }
+                offset += 2 + len;
+            }
+        }
+    }
+
+    /**
+     * Stores a record holding fields in slot of the page image in buf, which
+     * must have room for it.  slot is either an empty slot or the next slot
+     * past the end of the directory.
+     */
+    private static void putRecord(ByteBuffer buf, int slot, Field[] fields) {
+        int size = recordSize(fields);
+        int recBytes = getShort(buf, 2) + size;
+        int offset = buf.capacity() - recBytes;
+        writeRecord(buf, offset, fields);
+        putShort(buf, 2, recBytes);
+        if (slot == getShort(buf, 0)) {
+            putShort(buf, 0, slot + 1);
+        }
+        setSlot(buf, slot, offset, size);
+    }
+
+    /**
+     * Appends a record holding fields to the page image in buf, in a new
+     * slot at the end of the slot directory.  Used to build pages without a
+     * catalog entry for their table, e.g. by HeapFileEncoder.
+     *
+     * @return false (leaving buf untouched) if the record does not fit
+     */
+    static boolean appendRecord(ByteBuffer buf, Field[] fields) {
+        if (recordSize(fields) + SLOT_SIZE > freeBytes(buf)) {
+            return false;
+        }
+        putRecord(buf, getShort(buf, 0), fields);
+        return true;
+    }
+
+    /**
+     * Free space on a SlottedHeapPage is counted in bytes.  A tuple fits if
+     * {@link #spaceNeeded} is at most this.
+     */
+    public int getFreeSpace() {
+        return freeBytes(data);
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("Invalid TupleDesc.");
+        }
+        Field[] fields = fieldsOf(t);
+        int n = numSlots();
+        int slot = 0;
+        while (slot < n && slotOffset(data, slot) != 0) {
+            slot++;
+        }
+        int needed = recordSize(fields) + (slot == n ? SLOT_SIZE : 0);
+        if (needed > freeBytes(data)) {
+            throw new DbException("Not enough free space on this page.");
+        }
+        beginWrite();
+        putRecord(data, slot, fields);
+        slotFilled(slot, t);
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = slotOf(t);
+        beginWrite();
+        slotCleared(slot, t);
+
+        int offset = slotOffset(data, slot);
+        int length = slotLength(data, slot);
+        int recBytes = getShort(data, 2);
+        int recStart = data.capacity() - recBytes;
+
+        // slide the records below the deleted one up over it
+        byte[] moved = new byte[offset - recStart];
+        ByteBuffer src = data.duplicate();
+        src.position(recStart);
+        src.get(moved);
+        ByteBuffer dst = data.duplicate();
+        dst.position(recStart + length);
+        dst.put(moved);
+        for (int i = 0; i < length; i++) {
+            data.put(recStart + i, (byte) 0);
+        }
+        putShort(data, 2, recBytes - length);
+
+        int n = numSlots();
+        setSlot(data, slot, 0, 0);
+        for (int i = 0; i < n; i++) {
+            int o = slotOffset(data, i);
+            if (o != 0 && o < offset) {
+                setSlot(data, i, o + length, slotLength(data, i));
+            }
+        }
+        // drop empty entries from the end of the directory
+        while (n > 0 && slotOffset(data, n - 1) == 0) {
+            n--;
+        }
+        putShort(data, 0, n);
+        t.setRecordId(null);
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A StripedCounter is a counter that many threads can increment at once
+ * without contending on one memory location: each thread adds to a cell of
+ * its own, chosen by thread id, and cells sit a cache line apart so that
+ * threads on different cores do not invalidate each other's lines.  Reading
+ * the counter sums the cells, so it is slower than incrementing it and not
+ * an atomic snapshot while increments go on.
+ */
+final class StripedCounter {
+
+    // longs per cell: 64 bytes, a cache line on common hardware
+    private static final int PAD = 8;
+    private static final int CELLS = cells();
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PAD);
+
+    /**
+     * Returns the number of cells: the power of two at or above twice the
+     * number of processors, at most 64.
+     */
+    private static int cells() {
+        int n = 1;
+        while (n < 2 * Runtime.getRuntime().availableProcessors() && n < 64) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int index() {
+        // thread ids are sequential; spread them over the cells
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (CELLS - 1);
+    }
+
+    void increment() {
+        cells.getAndIncrement(index() * PAD);
+    }
+
+    void add(long n) {
+        cells.getAndAdd(index() * PAD, n);
+    }
+
+    long get() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < CELLS; i++) {
+            cells.set(i * PAD, 0);
+        }
+    }
+}
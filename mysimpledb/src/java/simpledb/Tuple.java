@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
@@ -14,6 +16,10 @@ public class Tuple implements Serializable {
     private Field[] fields;
     private RecordId rid;
 
+    // page this tuple is a view of, if its fields are decoded on demand
+    private transient TuplePage page;
+    private int slot;
+
     /**
      * Create a new tuple with the specified schema (type).
      *
@@ -27,6 +33,29 @@ public class Tuple implements Serializable {
         this.fields = new Field[td.numFields()];
     }
 
+    /**
+     * Create a tuple that is a view of slot slot of page.  Fields are read
+     * from the page the first time they are asked for.
+     */
+    Tuple(TupleDesc td, TuplePage page, int slot) {
+        this(td);
+        this.page = page;
+        this.slot = slot;
+    }
+
+    /**
+     * Decodes any fields not read yet and cuts the tuple loose from the page
+     * it is a view of, e.g. before that slot of the page is cleared.
+     */
+    void detach() {
+        if (page != null) {
+            for (int i = 0; i < fields.length; i++) {
+                getField(i);
+            }
+            page = null;
+        }
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -66,7 +95,12 @@ public class Tuple implements Serializable {
      * @return the value of the ith field, or null if it has not been set.
      */
     public Field getField(int i) {
-        return fields[i];
+        Field f = fields[i];
+        if (f == null && page != null) {
+            f = page.readField(slot, i);
+            fields[i] = f;
+        }
+        return f;
     }
 
     /**
@@ -80,13 +114,19 @@ public class Tuple implements Serializable {
     public String toString() {
         String s = "";
     	for ( int i = 0; i < fields.length; i++){
-    		if (Type.INT_TYPE.equals(fields[i].getType())) {
-        		s += ((IntField) fields[i]).getValue() + "\t";
+    		Field f = getField(i);
+    		if (Type.INT_TYPE.equals(f.getType())) {
+        		s += ((IntField) f).getValue() + "\t";
         	}
     		else {
-        		s += ((StringField) fields[i]).getValue() + "\t";
+        		s += ((StringField) f).getValue() + "\t";
         	}
         }
     	return s;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        detach();
+        out.defaultWriteObject();
+    }
 }
@@ -50,6 +50,9 @@ public class TupleDesc implements Serializable {
      *                be null.
      */
     private TDItem[] tdDesc;
+
+    // byte offset of each field within a serialized tuple
+    private int[] offsets;
     
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
         if (typeAr.length != fieldAr.length){
@@ -59,6 +62,7 @@ public class TupleDesc implements Serializable {
         for (int i=0; i<tdDesc.length; i++){
           	tdDesc[i] = new TDItem(typeAr[i], fieldAr[i]);
         }
+        computeOffsets();
     }
 
     /**
@@ -73,6 +77,18 @@ public class TupleDesc implements Serializable {
     	for (int i=0; i<tdDesc.length; i++){
           	tdDesc[i] = new TDItem(typeAr[i], null);
         }
+        computeOffsets();
+    }
+
+    private void computeOffsets() {
+        offsets = new int[tdDesc.length];
+        int offset = 0;
+        for (int i = 0; i < tdDesc.length; i++) {
+            offsets[i] = offset;
+            if (tdDesc[i].fieldType != null) {
+                offset += tdDesc[i].fieldType.getLen();
+            }
+        }
     }
 
     /**
@@ -109,6 +125,17 @@ public class TupleDesc implements Serializable {
     	return tdDesc[i].fieldType;
     }
 
+    /**
+     * Gets the byte offset of the ith field within a serialized tuple of
+     * this TupleDesc, i.e. the sum of the lengths of the fields before it.
+     *
+     * @param i The index of the field. It must be a valid index.
+     * @return the offset of the ith field
+     */
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
     /**
      * Find the index of the field with a given name.
      *
@@ -0,0 +1,302 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * TuplePage is the common base of the page formats a HeapFile can store.  It
+ * owns the raw page image and everything that does not depend on the
+ * layout: copy-on-write of read-only images, the before image used by
+ * recovery, dirty tracking and the tuple views handed out by
+ * {@link #iterator()}.
+ * <p/>
+ * A format lays out tuples in numbered slots; a RecordId names a page and a
+ * slot.  Subclasses say which slots are in use, decode individual fields
+ * straight out of the page image and implement insertion and deletion.
+ * Tuples returned by the iterator are views onto their slot, so a field is
+ * only decoded when someone asks for it.
+ *
+ * @see HeapPage
+ * @see SlottedHeapPage
+ */
+public abstract class TuplePage implements Page {
+
+    protected final HeapPageId pid;
+    protected final TupleDesc td;
+
+    // the page image; may be a read-only buffer (e.g. a slice of a mapped
+    // file) until the page is first modified.  Volatile because the
+    // BufferPool swaps it for a heap copy when it reuses the page's frame
+    // while other threads may still be reading the page.
+    protected volatile ByteBuffer data;
+    private boolean writable;
+
+    // tuples handed out for each slot so far, allocated on first use;
+    // views are detached from the page when their slot is cleared
+    private Tuple tuples[];
+
+    // before image of the page, or null if it has not been modified since
+    // the last call to setBeforeImage (i.e. the before image is the page
+    // itself).  Captured on first modification.
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+    private boolean dirty;
+    private TransactionId tid;
+
+    /**
+     * Creates a page over the page image held in data.  The buffer is not
+     * copied; if it is read-only it is copied on the first modification.
+     */
+    protected TuplePage(HeapPageId id, ByteBuffer data) {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.data = data;
+        this.writable = !data.isReadOnly();
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Returns the bytes of the before image of this page.
+     */
+    protected byte[] getBeforeImageData() {
+        synchronized (oldDataLock) {
+            return oldData != null ? oldData : getPageData();
+        }
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Prepares the page for modification: records the before image if this
+     * is the first change since setBeforeImage, and replaces a read-only
+     * page image with a private copy.  Subclasses call this before writing
+     * to {@link #data}.
+     */
+    protected void beginWrite() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+        if (!writable) {
+            ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+            ByteBuffer src = data.duplicate();
+            src.clear();
+            copy.put(src);
+            data = copy;
+            writable = true;
+        }
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p/>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the page constructor and have it
+     * produce an identical page object.
+     *
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        ByteBuffer src = data.duplicate();
+        src.clear();
+        src.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a read-only view of the page image, positioned at its start,
+     * for writing the page out without copying it.
+     */
+    ByteBuffer getImageBuffer() {
+        ByteBuffer image = data.asReadOnlyBuffer();
+        image.clear();
+        return image;
+    }
+
+    /**
+     * Called by the BufferPool before it reuses frame, the frame the page
+     * was read into.  If the page's image is in frame it is copied to the
+     * heap, so that threads that looked the page up before it was evicted,
+     * and tuples of the page they handed out, stay valid.
+     */
+    void releaseFrame(ByteBuffer frame) {
+        if (data != frame) {
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+        ByteBuffer src = frame.duplicate();
+        src.clear();
+        copy.put(src);
+        copy.clear();
+        data = copy;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        this.tid = tid;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        if (dirty) {
+            return tid;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of slots on this page; slots in use are numbered
+     * below this.
+     */
+    protected abstract int numSlots();
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public abstract boolean isSlotUsed(int i);
+
+    /**
+     * Reads field fieldIndex of the tuple in slot slotId directly from the
+     * page image.
+     */
+    abstract Field readField(int slotId, int fieldIndex);
+
+    /**
+     * Returns the free space on this page, in the units the page's file
+     * keeps in its free-space map.
+     *
+     * @see FreeSpaceMap
+     */
+    public abstract int getFreeSpace();
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     * that it is now stored on this page.
+     *
+     * @param t The tuple to add.
+     * @throws DbException if the page is full or tupledesc is mismatch.
+     */
+    public abstract void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Delete the specified tuple from the page;  the tuple should be updated to reflect
+     * that it is no longer stored on any page.
+     *
+     * @param t The tuple to delete
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *                     already empty.
+     */
+    public abstract void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * Returns the slot of t on this page.
+     *
+     * @throws DbException if t is not stored in a used slot of this page
+     */
+    protected int slotOf(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("Given tuple does not exist on the page.");
+        }
+        int slot = rid.tupleno();
+        if (slot < 0 || slot >= numSlots() || !isSlotUsed(slot)) {
+            throw new DbException("Tuple slot is already empty.");
+        }
+        return slot;
+    }
+
+    /**
+     * Called by subclasses once t has been stored in slot: t now describes
+     * that slot.
+     */
+    protected void slotFilled(int slot, Tuple t) {
+        t.detach();
+        t.setRecordId(new RecordId(pid, slot));
+        if (tuples != null && slot < tuples.length) {
+            tuples[slot] = t;
+        }
+    }
+
+    /**
+     * Called by subclasses before the contents of slot are cleared: anyone
+     * still holding t or a view of the slot keeps its values.
+     */
+    protected void slotCleared(int slot, Tuple t) {
+        t.detach();
+        if (tuples != null && slot < tuples.length && tuples[slot] != null) {
+            tuples[slot].detach();
+            tuples[slot] = null;
+        }
+    }
+
+    /**
+     * Returns the tuple in slot i, creating a view of it on first access.
+     */
+    private Tuple tupleAt(int i) {
+        if (tuples == null || i >= tuples.length) {
+            tuples = tuples == null ? new Tuple[numSlots()] : Arrays.copyOf(tuples, numSlots());
+        }
+        Tuple t = tuples[i];
+        if (t == null) {
+            t = new Tuple(td, this, i);
+            t.setRecordId(new RecordId(pid, i));
+            tuples[i] = t;
+        }
+        return t;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     * (note that this iterator shouldn't return tuples in empty slots!)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < numSlots() && !isSlotUsed(from)) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return next < numSlots();
+            }
+
+            public Tuple next() {
+                if (next >= numSlots()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = tupleAt(next);
+                next = advance(next + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The 2Q policy of Johnson and Shasha.  A page read for the first time
+ * enters A1in, a FIFO queue holding about a quarter of the pool; hits on it
+ * there do not count.  When it leaves A1in its id is remembered in the
+ * ghost queue A1out, and only a page requested again while remembered
+ * there is admitted to Am, the LRU list of hot pages that holds the rest of
+ * the pool.  A scan therefore only cycles through A1in and leaves Am, and
+ * the hit rate of the pages in it, alone.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    // target size of a1in and maximum size of a1out
+    private int kin = 1;
+    private int kout = 1;
+    // resident pages seen once, oldest first
+    private final LinkedHashMap<PageId, Boolean> a1in = new LinkedHashMap<PageId, Boolean>();
+    // ids of pages recently evicted from a1in, oldest first
+    private final LinkedHashMap<PageId, Boolean> a1out = new LinkedHashMap<PageId, Boolean>();
+    // resident hot pages, from least to most recently used
+    private final LinkedHashMap<PageId, Boolean> am =
+            new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    public void setCapacity(int numPages) {
+        kin = Math.max(1, numPages / 4);
+        kout = Math.max(1, numPages / 2);
+        trimGhosts();
+    }
+
+    public void pageHit(PageId pid) {
+        am.get(pid);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (a1out.remove(pid) != null) {
+            am.put(pid, Boolean.TRUE);
+        } else {
+            a1in.put(pid, Boolean.TRUE);
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (a1in.remove(pid) == null) {
+            am.remove(pid);
+        }
+    }
+
+    /**
+     * A page chosen from A1in, now remembered in A1out, goes back to the end
+     * of A1in rather than to Am: only a new request for it may make it hot.
+     */
+    public void victimKept(PageId pid) {
+        if (a1out.remove(pid) != null) {
+            a1in.put(pid, Boolean.TRUE);
+        } else {
+            am.put(pid, Boolean.TRUE);
+        }
+    }
+
+    public PageId chooseVictim(PageId incoming) {
+        if (!a1in.isEmpty() && (a1in.size() > kin || am.isEmpty())) {
+            PageId victim = removeFirst(a1in);
+            a1out.put(victim, Boolean.TRUE);
+            trimGhosts();
+            return victim;
+        }
+        if (!am.isEmpty()) {
+            return removeFirst(am);
+        }
+        return null;
+    }
+
+    private void trimGhosts() {
+        while (a1out.size() > kout) {
+            removeFirst(a1out);
+        }
+    }
+
+    private static PageId removeFirst(LinkedHashMap<PageId, Boolean> queue) {
+        Iterator<PageId> it = queue.keySet().iterator();
+        PageId first = it.next();
+        it.remove();
+        return first;
+    }
+}
@@ -0,0 +1,372 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VersionStore keeps the committed versions of pages that read-only
+ * transactions reading a snapshot may still need, for the BufferPool.
+ * <p/>
+ * Every commit of a transaction that changed pages gets a commit
+ * timestamp, and a snapshot is the timestamp of the last commit before it
+ * began.  A snapshot reads, for each page, the newest version committed at
+ * or before its timestamp:
+ * <ul>
+ * <li>the cached page itself, or its before image if a transaction that
+ * has not committed yet changed it;</li>
+ * <li>the page's pending image, the before image saved when a page changed
+ * by a transaction that has not committed yet is written out;</li>
+ * <li>an older version, saved on commit if a running snapshot began while
+ * it was current.</li>
+ * </ul>
+ * Older versions are dropped as soon as no running snapshot falls within
+ * the time they were current, so without long snapshots nothing is kept.
+ * <p/>
+ * Reads and commits of a page synchronize on one of a fixed set of locks
+ * chosen by the page's hash, so a reader never sees a commit half done.
+ *
+ * @Threadsafe
+ */
+class VersionStore {
+
+    /**
+     * A committed version of a page that is no longer current.
+     */
+    private static final class Version {
+        final Page page;
+        // the commit timestamp from which the version was current
+        final long from;
+        Version older;
+
+        Version(Page page, long from, Version older) {
+            this.page = page;
+            this.from = from;
+            this.older = older;
+        }
+    }
+
+    /**
+     * The versions of a page beyond the cached one.  Guarded by the page's
+     * stripe lock.
+     */
+    private static final class PageVersions {
+        // commit timestamp of the current committed version
+        long committedAt;
+        // the current committed version, if the page was written out while
+        // changed by a transaction that has not committed
+        Page pending;
+        // versions that were current before committedAt, newest first
+        Version older;
+    }
+
+    private final Object[] stripes = new Object[BufferPool.STRIPES];
+    private final ConcurrentHashMap<PageId, PageVersions> versions;
+    // the transaction that changed each page and has not completed yet
+    private final ConcurrentHashMap<PageId, TransactionId> writers;
+    // the pages each transaction has changed
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> written;
+    // the snapshot timestamp of each read-only transaction
+    private final ConcurrentHashMap<TransactionId, Long> snapshots;
+    // number of running snapshots at each timestamp; guarded by this
+    private final TreeMap<Long, Integer> running = new TreeMap<Long, Integer>();
+    // timestamp of the last commit; written holding this
+    private volatile long clock;
+    private volatile int numSnapshots;
+
+    VersionStore() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        versions = new ConcurrentHashMap<PageId, PageVersions>(64, 0.75f, BufferPool.STRIPES);
+        writers = new ConcurrentHashMap<PageId, TransactionId>(64, 0.75f, BufferPool.STRIPES);
+        written = new ConcurrentHashMap<TransactionId, Set<PageId>>();
+        snapshots = new ConcurrentHashMap<TransactionId, Long>();
+    }
+
+    private Object stripe(PageId pid) {
+        return stripes[pid.hashCode() & (stripes.length - 1)];
+    }
+
+    /**
+     * Starts a snapshot for tid as of the last commit.
+     */
+    synchronized void beginSnapshot(TransactionId tid) {
+        if (snapshots.containsKey(tid)) {
+            return;
+        }
+        Long ts = clock;
+        Integer n = running.get(ts);
+        running.put(ts, n == null ? 1 : n + 1);
+        snapshots.put(tid, ts);
+        numSnapshots++;
+    }
+
+    /**
+     * Ends tid's snapshot, if it has one, and drops the versions no running
+     * snapshot needs any more.
+     */
+    void endSnapshot(TransactionId tid) {
+        long[] live;
+        long now;
+        synchronized (this) {
+            Long ts = snapshots.remove(tid);
+            if (ts == null) {
+                return;
+            }
+            numSnapshots--;
+            int n = running.get(ts);
+            if (n > 1) {
+                running.put(ts, n - 1);
+                return;
+            }
+            running.remove(ts);
+            if (!running.isEmpty() && running.firstKey() < ts) {
+                // an older snapshot still needs everything ts did
+                return;
+            }
+            live = new long[running.size()];
+            int i = 0;
+            for (Long t : running.keySet()) {
+                live[i++] = t;
+            }
+            now = clock;
+        }
+        prune(live, now);
+    }
+
+    /**
+     * Returns the snapshot timestamp of tid, or -1 if tid is not reading a
+     * snapshot.
+     */
+    long snapshotOf(TransactionId tid) {
+        if (numSnapshots == 0) {
+            return -1;
+        }
+        Long ts = snapshots.get(tid);
+        return ts == null ? -1 : ts;
+    }
+
+    /**
+     * Returns the number of saved versions, pending ones included.
+     */
+    int getNumVersions() {
+        int n = 0;
+        for (Map.Entry<PageId, PageVersions> e : versions.entrySet()) {
+            synchronized (stripe(e.getKey())) {
+                PageVersions v = e.getValue();
+                if (v.pending != null) {
+                    n++;
+                }
+                for (Version o = v.older; o != null; o = o.older) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Records that tid changed pid.
+     */
+    void pageWritten(TransactionId tid, PageId pid) {
+        if (tid == null || tid.equals(writers.put(pid, tid))) {
+            return;
+        }
+        Set<PageId> pids = written.get(tid);
+        if (pids == null) {
+            Set<PageId> fresh = Collections.newSetFromMap(new ConcurrentHashMap<PageId, Boolean>());
+            pids = written.putIfAbsent(tid, fresh);
+            if (pids == null) {
+                pids = fresh;
+            }
+        }
+        pids.add(pid);
+    }
+
+    /**
+     * Returns the pages tid has changed so far.
+     */
+    Set<PageId> pagesWrittenBy(TransactionId tid) {
+        Set<PageId> pids = written.get(tid);
+        return pids == null ? Collections.<PageId>emptySet() : new HashSet<PageId>(pids);
+    }
+
+    /**
+     * Called before p is written out, on eviction or by write-behind.  If p
+     * was changed by a transaction that has not completed, saves its before
+     * image: the committed version, which cannot be read back from disk once
+     * p is written, and which the pool writes back if the transaction
+     * aborts.
+     */
+    void pageStolen(Page p) {
+        PageId pid = p.getId();
+        if (!writers.containsKey(pid)) {
+            return;
+        }
+        synchronized (stripe(pid)) {
+            PageVersions v = versions.get(pid);
+            if (v == null) {
+                v = new PageVersions();
+                versions.put(pid, v);
+            }
+            if (v.pending == null) {
+                v.pending = p.getBeforeImage();
+            }
+        }
+    }
+
+    /**
+     * Returns the pending version of pid, the one committed before the
+     * transaction changing it wrote it out, or null if there is none.
+     */
+    Page pendingVersion(PageId pid) {
+        synchronized (stripe(pid)) {
+            PageVersions v = versions.get(pid);
+            return v == null ? null : v.pending;
+        }
+    }
+
+    /**
+     * Returns the version of pid that the snapshot ts reads, given current,
+     * the page as cached now.
+     */
+    Page read(PageId pid, long ts, Page current) {
+        synchronized (stripe(pid)) {
+            PageVersions v = versions.get(pid);
+            if (v != null) {
+                if (v.committedAt > ts) {
+                    for (Version o = v.older; o != null; o = o.older) {
+                        if (o.from <= ts) {
+                            return o.page;
+                        }
+                    }
+                    // not reached: versions are kept while snapshots need them
+                }
+                if (v.pending != null) {
+                    return v.pending;
+                }
+            }
+            return current.getBeforeImage();
+        }
+    }
+
+    /**
+     * Called when tid completes.  On commit the pages tid changed get a new
+     * commit timestamp, their previous versions are saved if a running
+     * snapshot is older, and the cached pages' before images are reset.  On
+     * abort, the pool has already rolled tid's pages back, writing the
+     * pending versions of those written out back to disk, so the pending
+     * versions are dropped.
+     *
+     * @param pool the pool caching the pages
+     */
+    void transactionComplete(TransactionId tid, boolean commit, BufferPool pool) {
+        Set<PageId> pids = written.remove(tid);
+        if (pids == null) {
+            return;
+        }
+        if (!commit) {
+            for (PageId pid : pids) {
+                synchronized (stripe(pid)) {
+                    writers.remove(pid, tid);
+                    PageVersions v = versions.get(pid);
+                    if (v != null) {
+                        v.pending = null;
+                        dropIfEmpty(pid, v);
+                    }
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            long ts = clock + 1;
+            for (PageId pid : pids) {
+                Page cached = pool.getCachedPage(pid);
+                synchronized (stripe(pid)) {
+                    writers.remove(pid, tid);
+                    PageVersions v = versions.get(pid);
+                    // the version being replaced was current from
+                    // committedAt; only snapshots since then read it
+                    if (running.ceilingKey(v == null ? 0 : v.committedAt) != null) {
+                        if (v == null) {
+                            v = new PageVersions();
+                            versions.put(pid, v);
+                        }
+                        Page before = v.pending != null ? v.pending
+                                : cached != null ? cached.getBeforeImage() : null;
+                        if (before != null) {
+                            v.older = new Version(before, v.committedAt, v.older);
+                        }
+                    }
+                    if (v != null) {
+                        v.committedAt = ts;
+                        v.pending = null;
+                        dropIfEmpty(pid, v);
+                    }
+                    if (cached != null) {
+                        cached.setBeforeImage();
+                    }
+                }
+            }
+            clock = ts;
+        }
+    }
+
+    /**
+     * Removes v, the versions of pid, if it holds none.  Called holding
+     * pid's stripe lock.
+     */
+    private void dropIfEmpty(PageId pid, PageVersions v) {
+        if (v.pending == null && v.older == null) {
+            versions.remove(pid, v);
+        }
+    }
+
+    /**
+     * Drops the older versions that none of the running snapshots live,
+     * sorted, reads: a version is needed only if one of them falls within
+     * the time it was current.  Versions that stopped being current after
+     * now were saved after live was taken and are kept.
+     */
+    private void prune(long[] live, long now) {
+        for (Iterator<Map.Entry<PageId, PageVersions>> it = versions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<PageId, PageVersions> e = it.next();
+            PageId pid = e.getKey();
+            synchronized (stripe(pid)) {
+                PageVersions v = e.getValue();
+                long until = v.committedAt;
+                Version newer = null;
+                for (Version o = v.older; o != null; o = o.older) {
+                    if (until <= now && !needed(live, o.from, until)) {
+                        if (newer == null) {
+                            v.older = o.older;
+                        } else {
+                            newer.older = o.older;
+                        }
+                    } else {
+                        newer = o;
+                    }
+                    until = o.from;
+                }
+                dropIfEmpty(pid, v);
+            }
+        }
+    }
+
+    /**
+     * Returns true if one of the sorted timestamps live is in [from, until).
+     */
+    private static boolean needed(long[] live, long from, long until) {
+        int i = Arrays.binarySearch(live, from);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < live.length && live[i] < until;
+    }
+}
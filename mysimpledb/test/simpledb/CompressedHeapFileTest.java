@@ -0,0 +1,133 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private HeapFile plain;
+    private CompressedHeapFile cf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    private static File tempFile(String prefix) throws Exception {
+        File f = File.createTempFile(prefix, ".dat");
+        f.deleteOnExit();
+        CompressedHeapFile.indexFileFor(f).deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1200, 1 << 16, null, tuples);
+        plain = Utility.openHeapFile(2, f);
+        File out = tempFile("compressed");
+        CompressedHeapFile.compress(f, out, BufferPool.getPageSize());
+        cf = new CompressedHeapFile(out, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        plain.close();
+        cf.close();
+    }
+
+    /**
+     * Pages read back are the uncompressed pages
+     */
+    @Test
+    public void readPage() throws Exception {
+        assertEquals(plain.numPages(), cf.numPages());
+        for (int i = 0; i < cf.numPages(); i++) {
+            assertArrayEquals(plain.readPage(new HeapPageId(plain.getId(), i)).getPageData(),
+                    cf.readPage(new HeapPageId(cf.getId(), i)).getPageData());
+        }
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * A table of short, padded strings shrinks at least 5x
+     */
+    @Test
+    public void compressesPadding() throws Exception {
+        File txt = File.createTempFile("compressed", ".txt");
+        txt.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(txt));
+        for (int i = 0; i < 5000; i++) {
+            bw.write(i + ",name" + (i * 31 % 1000) + "\n");
+        }
+        bw.close();
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        File fixed = tempFile("fixed");
+        HeapFileEncoder.convert(txt, fixed, BufferPool.getPageSize(), 2, types, ',');
+        File out = tempFile("compressed");
+        HeapFileEncoder.convertCompressed(txt, out, BufferPool.getPageSize(), 2, types, ',');
+
+        CompressedHeapFile strings = new CompressedHeapFile(out, new TupleDesc(types));
+        assertEquals(fixed.length() / BufferPool.getPageSize(), strings.numPages());
+        assertTrue(strings.sizeOnDisk() * 5 < fixed.length());
+        strings.close();
+    }
+
+    /**
+     * A rewritten page is appended rather than overwriting its previous
+     * image, as is a new page, and both survive reopening the file
+     */
+    @Test
+    public void writePage() throws Exception {
+        long length = cf.getFile().length();
+        byte[] before = new byte[(int) length];
+        RandomAccessFile raf = new RandomAccessFile(cf.getFile(), "r");
+        raf.readFully(before);
+        raf.close();
+        HeapPageId pid0 = new HeapPageId(cf.getId(), 0);
+        cf.writePage(new HeapPage(pid0, HeapPage.createEmptyPageData()));
+        assertTrue(cf.getFile().length() > length);
+        // the previous images are untouched
+        byte[] after = new byte[(int) length];
+        raf = new RandomAccessFile(cf.getFile(), "r");
+        raf.readFully(after);
+        raf.close();
+        assertArrayEquals(before, after);
+        length = cf.getFile().length();
+
+        int n = cf.numPages();
+        HeapPage page = new HeapPage(new HeapPageId(cf.getId(), n), HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        cf.writePage(page);
+        assertEquals(n + 1, cf.numPages());
+        assertTrue(cf.getFile().length() > length);
+
+        cf.close();
+        assertEquals(n + 1, cf.numPages());
+        assertFalse(((HeapPage) cf.readPage(pid0)).iterator().hasNext());
+        Tuple t = ((HeapPage) cf.readPage(page.getId())).iterator().next();
+        assertEquals(new IntField(7), t.getField(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,175 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final int CAPACITY = 40;
+
+    /**
+     * A pool of CAPACITY page ids run by a policy, counting hits.
+     */
+    private static class Pool {
+        final EvictionPolicy policy;
+        final HashSet<PageId> cached = new HashSet<PageId>();
+        int hits;
+
+        Pool(EvictionPolicy policy) {
+            this.policy = policy;
+            policy.setCapacity(CAPACITY);
+        }
+
+        void get(PageId pid) {
+            if (cached.contains(pid)) {
+                hits++;
+                policy.pageHit(pid);
+                return;
+            }
+            if (cached.size() == CAPACITY) {
+                PageId victim = policy.chooseVictim(pid);
+                assertTrue("victim " + victim + " is not cached", cached.remove(victim));
+            }
+            cached.add(pid);
+            policy.pageAdded(pid);
+        }
+    }
+
+    private static EvictionPolicy[] allPolicies() {
+        return new EvictionPolicy[]{new LruEvictionPolicy(), new ClockEvictionPolicy(),
+                new TwoQueueEvictionPolicy(), new ArcEvictionPolicy()};
+    }
+
+    /**
+     * Victims are always cached pages, and every cached page is eventually
+     * chosen
+     */
+    @Test
+    public void victimsAreCached() {
+        for (EvictionPolicy policy : allPolicies()) {
+            Pool pool = new Pool(policy);
+            Random r = new Random(1);
+            for (int i = 0; i < 20000; i++) {
+                pool.get(new HeapPageId(1, r.nextInt(200)));
+                if (i % 97 == 0 && !pool.cached.isEmpty()) {
+                    PageId pid = pool.cached.iterator().next();
+                    pool.cached.remove(pid);
+                    policy.pageRemoved(pid);
+                }
+            }
+            while (!pool.cached.isEmpty()) {
+                PageId victim = policy.chooseVictim(new HeapPageId(2, 0));
+                assertTrue(pool.cached.remove(victim));
+            }
+            assertNull(policy.chooseVictim(new HeapPageId(2, 0)));
+        }
+    }
+
+    /**
+     * LRU evicts the least recently used page
+     */
+    @Test
+    public void lruOrder() {
+        Pool pool = new Pool(new LruEvictionPolicy());
+        for (int i = 0; i < CAPACITY; i++) {
+            pool.get(new HeapPageId(1, i));
+        }
+        pool.get(new HeapPageId(1, 0));
+        assertEquals(new HeapPageId(1, 1), pool.policy.chooseVictim(new HeapPageId(1, CAPACITY)));
+    }
+
+    /**
+     * A hot set of half the pool is looked up once every four pages of a
+     * scan over 200 times the pool.  Once the policy has adapted (measured
+     * over the second half of the scan), scan-resistant policies keep the
+     * hot set cached; LRU does not.
+     */
+    @Test
+    public void scanResistance() {
+        assertTrue(hotHitRate(new LruEvictionPolicy()) < 0.5);
+        assertTrue(hotHitRate(new TwoQueueEvictionPolicy()) > 0.9);
+        assertTrue(hotHitRate(new ArcEvictionPolicy()) > 0.9);
+    }
+
+    private double hotHitRate(EvictionPolicy policy) {
+        Pool pool = new Pool(policy);
+        Random r = new Random(2);
+        int hot = CAPACITY / 2;
+        // warm up the hot set
+        for (int i = 0; i < 20 * hot; i++) {
+            pool.get(new HeapPageId(1, r.nextInt(hot)));
+        }
+        int hotHits = 0;
+        int lookups = 0;
+        for (int scanPage = 0; scanPage < 200 * CAPACITY; scanPage++) {
+            if (scanPage % 4 == 0) {
+                pool.hits = 0;
+                pool.get(new HeapPageId(1, r.nextInt(hot)));
+                if (scanPage >= 100 * CAPACITY) {
+                    hotHits += pool.hits;
+                    lookups++;
+                }
+            }
+            pool.get(new HeapPageId(2, scanPage));
+        }
+        return (double) hotHits / lookups;
+    }
+
+    /**
+     * A scan page chosen as victim while pinned, and kept, is not made hot:
+     * the scan goes on to evict it like its other pages, while the hot set
+     * stays cached
+     */
+    @Test
+    public void keptVictimStaysCold() {
+        EvictionPolicy[] policies = {new TwoQueueEvictionPolicy(), new ArcEvictionPolicy()};
+        for (EvictionPolicy policy : policies) {
+            Pool pool = new Pool(policy);
+            Random r = new Random(3);
+            int hot = CAPACITY / 2;
+            int scanPage = 0;
+            for (; scanPage < 50 * CAPACITY; scanPage++) {
+                if (scanPage % 4 == 0) {
+                    pool.get(new HeapPageId(1, r.nextInt(hot)));
+                }
+                pool.get(new HeapPageId(2, scanPage));
+            }
+            HashSet<PageId> hotCached = new HashSet<PageId>();
+            for (PageId pid : pool.cached) {
+                if (pid.getTableId() == 1) {
+                    hotCached.add(pid);
+                }
+            }
+
+            PageId incoming = new HeapPageId(2, scanPage++);
+            PageId pinned = policy.chooseVictim(incoming);
+            assertEquals(2, pinned.getTableId());
+            policy.victimKept(pinned);
+            PageId victim = policy.chooseVictim(incoming);
+            assertTrue(pool.cached.remove(victim));
+            pool.cached.add(incoming);
+            policy.pageAdded(incoming);
+
+            for (int i = 0; i < 2 * CAPACITY; i++) {
+                pool.get(new HeapPageId(2, scanPage++));
+            }
+            assertFalse(policy.getClass().getSimpleName(), pool.cached.contains(pinned));
+            assertTrue(policy.getClass().getSimpleName(), pool.cached.containsAll(hotCached));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
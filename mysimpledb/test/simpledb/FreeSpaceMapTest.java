@@ -0,0 +1,144 @@
+package simpledb;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends TestUtil.CreateHeapFile {
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        empty.close();
+    }
+
+    /**
+     * The map follows inserts: full pages are skipped, new pages are tracked
+     */
+    @Test
+    public void insertsUpdateMap() throws Exception {
+        for (int i = 0; i < 504; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        FreeSpaceMap map = empty.getFreeSpaceMap();
+        assertEquals(0, map.getFreeSpace(0));
+        assertEquals(-1, map.findPage(1));
+
+        empty.insertTuple(tid, Utility.getHeapTuple(0, 2));
+        assertEquals(2, map.numPages());
+        assertEquals(503, map.getFreeSpace(1));
+        assertEquals(1, map.findPage(1));
+    }
+
+    /**
+     * Space freed by a delete is reused by the next insert
+     */
+    @Test
+    public void deleteFreesSpace() throws Exception {
+        Tuple victim = null;
+        for (int i = 0; i < 600; ++i) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            empty.insertTuple(tid, t);
+            if (i == 10) {
+                victim = t;
+            }
+        }
+        assertEquals(0, victim.getRecordId().getPageId().pageNumber());
+        empty.deleteTuple(tid, victim);
+        assertEquals(1, empty.getFreeSpaceMap().getFreeSpace(0));
+
+        Tuple t = Utility.getHeapTuple(-1, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(0, t.getRecordId().getPageId().pageNumber());
+        assertEquals(10, t.getRecordId().tupleno());
+    }
+
+    /**
+     * findPage returns the lowest page with enough room, however many pages
+     * have less
+     */
+    @Test
+    public void findsLowestPageWithRoom() throws Exception {
+        FreeSpaceMap map = empty.getFreeSpaceMap();
+        for (int i = 0; i < 1000; i++) {
+            map.update(i, 3);
+        }
+        map.update(700, 40);
+        map.update(300, 20);
+        assertEquals(0, map.findPage(3));
+        assertEquals(300, map.findPage(10));
+        assertEquals(700, map.findPage(21));
+        assertEquals(-1, map.findPage(41));
+
+        map.update(300, 0);
+        assertEquals(700, map.findPage(10));
+        map.update(5000, 50);
+        assertEquals(5001, map.numPages());
+        assertEquals(5000, map.findPage(41));
+        assertEquals(0, map.getFreeSpace(4999));
+        assertEquals(700, map.findPage(10));
+    }
+
+    /**
+     * Entries for pages written to disk are loaded back from the side file
+     */
+    @Test
+    public void persisted() throws Exception {
+        for (int i = 0; i < 600; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().flushAllPages();
+        empty.close();
+        assertTrue(FreeSpaceMap.fileFor(empty.getFile()).exists());
+
+        FreeSpaceMap map = new FreeSpaceMap(empty);
+        assertEquals(2, map.numPages());
+        assertEquals(0, map.getFreeSpace(0));
+        assertEquals(408, map.getFreeSpace(1));
+        map.close();
+    }
+
+    /**
+     * A side file older than the table is ignored and rebuilt
+     */
+    @Test
+    public void staleMapRebuilt() throws Exception {
+        empty.insertTuple(tid, Utility.getHeapTuple(0, 2));
+        Database.getBufferPool().flushAllPages();
+        empty.close();
+
+        // rewrite page 0 without going through the map
+        File fsm = FreeSpaceMap.fileFor(empty.getFile());
+        HeapFile other = new HeapFile(empty.getFile(), empty.getTupleDesc());
+        other.writePage(new HeapPage(new HeapPageId(empty.getId(), 0), HeapPage.createEmptyPageData()));
+        other.close();
+        fsm.setLastModified(empty.getFile().lastModified() - 10000);
+
+        FreeSpaceMap map = new FreeSpaceMap(empty);
+        assertEquals(504, map.getFreeSpace(0));
+        map.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -80,6 +80,39 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() from several threads sharing the
+     * file's channel
+     */
+    @Test
+    public void readPageConcurrently() throws Exception {
+        final HeapFile bigFile = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        final int expectedPages = bigFile.numPages();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 200; j++) {
+                            int pgNo = j % expectedPages;
+                            HeapPage page = (HeapPage) bigFile.readPage(new HeapPageId(bigFile.getId(), pgNo));
+                            assertEquals(pgNo, page.getId().pageNumber());
+                            assertTrue(page.isSlotUsed(0));
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
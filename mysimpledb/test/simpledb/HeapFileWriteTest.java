@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +49,41 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.insertTuples(): the first page is topped up
+     * through the buffer pool and the rest are appended as new pages, which
+     * enter the buffer pool locked like the first.
+     */
+    @Test
+    public void insertTuples() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        int total = 504 * (HeapFile.EXTENT_PAGES + 2);
+        for (int i = 10; i < total; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        ArrayList<Page> modified = empty.insertTuples(tid, tuples.iterator());
+        assertEquals(HeapFile.EXTENT_PAGES + 2, modified.size());
+        assertEquals(0, modified.get(0).getId().pageNumber());
+        assertEquals(HeapFile.EXTENT_PAGES + 2, empty.numPages());
+        for (Page p : modified) {
+            assertTrue(Database.getBufferPool().getLockManager().holdsExclusive(tid, p.getId()));
+        }
+        Database.getBufferPool().flushAllPages();
+
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            assertEquals(count, ((IntField) it.next().getField(0)).getValue());
+            count++;
+        }
+        it.close();
+        assertEquals(total, count);
+    }
+
     /**
      * JUnit suite target
      */
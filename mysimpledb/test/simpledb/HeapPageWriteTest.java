@@ -130,6 +130,22 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.deleteTuple(): tuples read from the page keep
+     * their values after their slot is cleared and reused
+     */
+    @Test
+    public void deletedTupleKeepsValues() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(-1, 2));
+
+        assertEquals(new IntField(HeapPageReadTest.EXAMPLE_VALUES[0][0]), first.getField(0));
+        assertEquals(new IntField(HeapPageReadTest.EXAMPLE_VALUES[0][1]), first.getField(1));
+        assertEquals(new IntField(-1), page.iterator().next().getField(0));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,318 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockManagerTest extends SimpleDbTestBase {
+    private LockManager lm;
+    private PageId p0;
+    private PageId p1;
+    private TransactionId t1;
+    private TransactionId t2;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        lm = new LockManager();
+        lm.setLockTimeout(200);
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        t1 = new TransactionId();
+        t2 = new TransactionId();
+    }
+
+    /**
+     * Starts a thread that locks pid for tid.  Its result is null once the
+     * lock is granted, the exception if acquire threw.
+     */
+    private Thread acquireLater(final TransactionId tid, final PageId pid, final boolean exclusive,
+                                final AtomicReference<Object> result) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    lm.acquire(tid, pid, exclusive);
+                    result.set(null);
+                } catch (TransactionAbortedException e) {
+                    result.set(e);
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void sharedLocksAreCompatible() throws Exception {
+        lm.acquire(t1, p0, false);
+        lm.acquire(t2, p0, false);
+        assertTrue(lm.holdsLock(t1, p0));
+        assertTrue(lm.holdsLock(t2, p0));
+        assertFalse(lm.holdsExclusive(t1, p0));
+        assertFalse(lm.holdsLock(t1, p1));
+    }
+
+    @Test
+    public void exclusiveWaitsForRelease() throws Exception {
+        lm.setLockTimeout(5000);
+        lm.acquire(t1, p0, true);
+        AtomicReference<Object> result = new AtomicReference<Object>("waiting");
+        Thread waiter = acquireLater(t2, p0, false, result);
+        Thread.sleep(50);
+        assertEquals("waiting", result.get());
+        // other pages are not affected
+        lm.acquire(t2, p1, true);
+
+        lm.releaseAll(t1);
+        waiter.join();
+        assertNull(result.get());
+        assertTrue(lm.holdsLock(t2, p0));
+        assertFalse(lm.holdsLock(t1, p0));
+    }
+
+    @Test
+    public void timeoutAborts() throws Exception {
+        lm.acquire(t1, p0, false);
+        try {
+            lm.acquire(t2, p0, true);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertFalse(lm.holdsLock(t2, p0));
+        assertTrue(lm.holdsLock(t1, p0));
+    }
+
+    @Test
+    public void deadlockAbortsYoungest() throws Exception {
+        lm.setLockTimeout(0);
+        lm.acquire(t1, p0, true);
+        lm.acquire(t2, p1, true);
+        AtomicReference<Object> result = new AtomicReference<Object>("waiting");
+        Thread waiter = acquireLater(t1, p1, true, result);
+        Thread.sleep(50);
+        assertEquals("waiting", result.get());
+        try {
+            lm.acquire(t2, p0, false);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected: t2 is younger than t1
+        }
+        assertEquals(1, lm.getDeadlockCount());
+        lm.releaseAll(t2);
+        waiter.join();
+        assertNull(result.get());
+        assertTrue(lm.holdsExclusive(t1, p1));
+    }
+
+    @Test
+    public void deadlockWakesWaitingVictim() throws Exception {
+        lm.setLockTimeout(0);
+        lm.acquire(t1, p0, true);
+        lm.acquire(t2, p1, true);
+        AtomicReference<Object> result = new AtomicReference<Object>("waiting");
+        Thread waiter = acquireLater(t2, p0, true, result);
+        Thread.sleep(50);
+        assertEquals("waiting", result.get());
+        AtomicReference<Object> mine = new AtomicReference<Object>("waiting");
+        Thread t1Thread = acquireLater(t1, p1, true, mine);
+        waiter.join();
+        assertTrue(result.get() instanceof TransactionAbortedException);
+        assertEquals("waiting", mine.get());
+        lm.releaseAll(t2);
+        t1Thread.join();
+        assertNull(mine.get());
+    }
+
+    @Test
+    public void upgradeDeadlock() throws Exception {
+        lm.setLockTimeout(0);
+        lm.acquire(t1, p0, false);
+        lm.acquire(t2, p0, false);
+        AtomicReference<Object> result = new AtomicReference<Object>("waiting");
+        Thread upgrader = acquireLater(t1, p0, true, result);
+        Thread.sleep(50);
+        try {
+            lm.acquire(t2, p0, true);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        lm.releaseAll(t2);
+        upgrader.join();
+        assertNull(result.get());
+        assertTrue(lm.holdsExclusive(t1, p0));
+    }
+
+    @Test
+    public void upgrade() throws Exception {
+        lm.acquire(t1, p0, false);
+        lm.acquire(t1, p0, true);
+        assertTrue(lm.holdsExclusive(t1, p0));
+        // a weaker request keeps the exclusive lock
+        lm.acquire(t1, p0, false);
+        assertTrue(lm.holdsExclusive(t1, p0));
+    }
+
+    @Test
+    public void upgradeWaitsForOtherReaders() throws Exception {
+        lm.setLockTimeout(5000);
+        lm.acquire(t1, p0, false);
+        lm.acquire(t2, p0, false);
+        AtomicReference<Object> result = new AtomicReference<Object>("waiting");
+        Thread upgrader = acquireLater(t1, p0, true, result);
+        Thread.sleep(50);
+        assertEquals("waiting", result.get());
+        lm.release(t2, p0);
+        upgrader.join();
+        assertNull(result.get());
+        assertTrue(lm.holdsExclusive(t1, p0));
+    }
+
+    @Test
+    public void releaseAllFreesEveryPage() throws Exception {
+        lm.acquire(t1, p0, true);
+        lm.acquire(t1, p1, false);
+        assertEquals(2, lm.getLockedPages(t1).size());
+        lm.releaseAll(t1);
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+        lm.acquire(t2, p0, true);
+        lm.acquire(t2, p1, true);
+    }
+
+    @Test
+    public void intentionLocks() throws Exception {
+        lm.acquire(t1, p0, false);
+        lm.acquire(t2, p1, true);
+        assertEquals(LockManager.Mode.IS, lm.getTableLock(t1, 1));
+        assertEquals(LockManager.Mode.IX, lm.getTableLock(t2, 1));
+        // a table lock S conflicts with t2's IX
+        try {
+            lm.acquireTable(t1, 1, LockManager.Mode.S);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        lm.releaseAll(t2);
+        assertEquals(LockManager.Mode.S, lm.acquireTable(t1, 1, LockManager.Mode.S));
+        // the table lock covers reads of every page
+        assertTrue(lm.holdsLock(t1, new HeapPageId(1, 7)));
+        assertFalse(lm.holdsExclusive(t1, new HeapPageId(1, 7)));
+        lm.acquire(t1, p1, false);
+        assertFalse(lm.getLockedPages(t1).contains(p1));
+    }
+
+    @Test
+    public void escalation() throws Exception {
+        lm.setEscalationThreshold(4);
+        for (int i = 0; i < 4; i++) {
+            lm.acquire(t1, new HeapPageId(1, i), false);
+        }
+        assertEquals(4, lm.getLockedPages(t1).size());
+        assertEquals(LockManager.Mode.IS, lm.getTableLock(t1, 1));
+        lm.acquire(t1, new HeapPageId(1, 4), false);
+        assertEquals(1, lm.getEscalationCount());
+        assertEquals(LockManager.Mode.S, lm.getTableLock(t1, 1));
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+        assertTrue(lm.holdsLock(t1, new HeapPageId(1, 100)));
+        // readers of other pages still get in, writers do not
+        lm.acquire(t2, new HeapPageId(1, 100), false);
+        try {
+            lm.acquire(t2, new HeapPageId(1, 101), true);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        // pages of other tables are unaffected
+        lm.acquire(t2, new HeapPageId(2, 0), true);
+    }
+
+    @Test
+    public void escalationWritesToExclusive() throws Exception {
+        lm.setEscalationThreshold(2);
+        for (int i = 0; i < 3; i++) {
+            lm.acquire(t1, new HeapPageId(1, i), i == 0);
+        }
+        assertEquals(LockManager.Mode.X, lm.getTableLock(t1, 1));
+        assertTrue(lm.holdsExclusive(t1, new HeapPageId(1, 100)));
+    }
+
+    @Test
+    public void escalationDeferredOnConflict() throws Exception {
+        lm.setEscalationThreshold(2);
+        lm.acquire(t2, new HeapPageId(1, 9), true);
+        for (int i = 0; i < 3; i++) {
+            lm.acquire(t1, new HeapPageId(1, i), false);
+        }
+        // t2's IX blocks escalation to S, so t1 keeps its page locks
+        assertEquals(0, lm.getEscalationCount());
+        assertEquals(3, lm.getLockedPages(t1).size());
+        lm.releaseAll(t2);
+        lm.acquire(t1, new HeapPageId(1, 3), false);
+        assertEquals(1, lm.getEscalationCount());
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+    }
+
+    @Test
+    public void optimisticStamps() throws Exception {
+        long stamp = lm.tryOptimisticRead(p0);
+        assertTrue(stamp >= 0);
+        // shared locks do not disturb optimistic readers
+        lm.acquire(t1, p0, false);
+        assertTrue(lm.validate(p0, stamp));
+        lm.releaseAll(t1);
+        lm.acquire(t2, p0, true);
+        assertFalse(lm.validate(p0, stamp));
+        assertEquals(-1, lm.tryOptimisticRead(p0));
+        lm.releaseAll(t2);
+        stamp = lm.tryOptimisticRead(p0);
+        assertTrue(stamp >= 0);
+        assertTrue(lm.validate(p0, stamp));
+        // nor does a writer on another page, but one locking the whole table does
+        lm.acquire(t1, new HeapPageId(2, 0), true);
+        assertTrue(lm.validate(p0, stamp));
+        lm.acquireTable(t2, 1, LockManager.Mode.X);
+        assertFalse(lm.validate(p0, stamp));
+        assertEquals(-1, lm.tryOptimisticRead(p1));
+    }
+
+    /**
+     * The buffer pool takes locks in getPage and releases them when the
+     * transaction completes.
+     */
+    @Test
+    public void bufferPoolLocksPages() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.getLockManager().setLockTimeout(200);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        pool.getPage(t1, pid, Permissions.READ_ONLY);
+        pool.getPage(t2, pid, Permissions.READ_ONLY);
+        assertTrue(pool.holdsLock(t1, pid));
+        try {
+            pool.getPage(t2, pid, Permissions.READ_WRITE);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        pool.transactionComplete(t1);
+        assertFalse(pool.holdsLock(t1, pid));
+        pool.getPage(t2, pid, Permissions.READ_WRITE);
+        assertTrue(pool.getLockManager().holdsExclusive(t2, pid));
+        pool.transactionComplete(t2);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
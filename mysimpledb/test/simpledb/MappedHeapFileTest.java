@@ -0,0 +1,83 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private MappedHeapFile mf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1200, 1 << 16, null, tuples);
+        mf = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mf, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mf.close();
+    }
+
+    /**
+     * Pages read through the mapping match the plain HeapFile reads
+     */
+    @Test
+    public void readPage() throws Exception {
+        HeapFile hf = Utility.openHeapFile(2, mf.getFile());
+        assertEquals(3, mf.numPages());
+        for (int i = 0; i < mf.numPages(); i++) {
+            HeapPage mapped = (HeapPage) mf.readPage(new HeapPageId(mf.getId(), i));
+            HeapPage plain = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            assertArrayEquals(plain.getPageData(), mapped.getPageData());
+        }
+    }
+
+    @Test
+    public void scan() throws Exception {
+        SystemTestUtil.matchTuples(mf, tuples);
+    }
+
+    /**
+     * writePage on an existing page goes through the mapping, and a page
+     * appended past the end of the file is visible to later reads
+     */
+    @Test
+    public void writePageAndGrow() throws Exception {
+        HeapPageId pid0 = new HeapPageId(mf.getId(), 0);
+        HeapPage empty = new HeapPage(pid0, HeapPage.createEmptyPageData());
+        mf.writePage(empty);
+        assertFalse(((HeapPage) mf.readPage(pid0)).iterator().hasNext());
+
+        HeapPageId pid3 = new HeapPageId(mf.getId(), 3);
+        HeapPage page = new HeapPage(pid3, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        mf.writePage(page);
+        assertEquals(4, mf.numPages());
+        Tuple t = ((HeapPage) mf.readPage(pid3)).iterator().next();
+        assertEquals(new IntField(7), t.getField(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,105 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+/**
+ * ParallelHeapFileEncoder must write exactly the bytes HeapFileEncoder
+ * writes.  Blocks are kept tiny so that every input is split across many
+ * blocks and threads.
+ */
+public class ParallelHeapFileEncoderTest extends SimpleDbTestBase {
+
+    private static final Type[] INTS = new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+    private static final Type[] MIXED = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+
+    /**
+     * Converts input with both encoders and checks the outputs are
+     * identical; returns the row count reported by the parallel encoder.
+     */
+    private long checkSame(String input, Type[] types) throws Exception {
+        File in = File.createTempFile("input", ".txt");
+        in.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(in);
+        os.write(input.getBytes("ISO-8859-1"));
+        os.close();
+
+        File expected = File.createTempFile("expected", ".dat");
+        expected.deleteOnExit();
+        HeapFileEncoder.convert(in, expected, BufferPool.getPageSize(), types.length, types, ',');
+        File actual = File.createTempFile("actual", ".dat");
+        actual.deleteOnExit();
+        long rows = ParallelHeapFileEncoder.convert(in, actual, BufferPool.getPageSize(),
+                types.length, types, ',', 3, 64);
+
+        assertArrayEquals(TestUtil.readFileBytes(expected.getPath()), TestUtil.readFileBytes(actual.getPath()));
+        return rows;
+    }
+
+    @Test
+    public void randomInts() throws Exception {
+        Random r = new Random(460);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append(r.nextInt()).append(',').append(r.nextInt(100)).append(',').append(-r.nextInt(1000)).append('\n');
+        }
+        assertEquals(2000, checkSame(sb.toString(), INTS));
+    }
+
+    /**
+     * Exactly one full page, and an empty input
+     */
+    @Test
+    public void pageBoundaries() throws Exception {
+        int perPage = (BufferPool.getPageSize() * 8) / (12 * 8 + 1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < perPage; i++) {
+            sb.append(i).append(",1,2\n");
+        }
+        assertEquals(perPage, checkSame(sb.toString(), INTS));
+        assertEquals(0, checkSame("", INTS));
+    }
+
+    /**
+     * Blank lines, '\r's, padding, signs, string truncation and an
+     * unterminated final line without separators
+     */
+    @Test
+    public void wellFormedQuirks() throws Exception {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longName.append((char) ('a' + i % 26));
+        }
+        String input = "\n1,alice\r\n\r\n  +2 ,  bob smith  \n"
+                + "\n-3,\n4," + longName + "\n5,car\rol\n6";
+        assertEquals(5, checkSame(input, MIXED));
+    }
+
+    /**
+     * Inputs HeapFileEncoder handles in its own way are handed to it
+     */
+    @Test
+    public void malformedFallsBack() throws Exception {
+        checkSame("1,2,3\n4,x,6\n7,8,9\n", INTS);
+        checkSame("1,2,3\n4,5\n7,8,9\n", INTS);
+        checkSame("1,2,3\n4,5,6\n7,8", INTS);
+        checkSame("1,caf\u00e9\n2,b\n", MIXED);
+        checkSame("1,2,3\n99999999999,5,6\n", INTS);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelHeapFileEncoderTest.class);
+    }
+}
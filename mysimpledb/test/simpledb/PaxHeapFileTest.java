@@ -0,0 +1,107 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class PaxHeapFileTest extends SimpleDbTestBase {
+    private HeapFile rows;
+    private PaxHeapFile pf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    /**
+     * Set up initial resources for each unit test: the same random table
+     * in row-major and PAX format.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(4, 1200, 1 << 16, null, tuples);
+        rows = Utility.openHeapFile(4, f);
+
+        File txt = File.createTempFile("pax", ".txt");
+        txt.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(txt));
+        for (ArrayList<Integer> tuple : tuples) {
+            bw.write(Utility.listToString(tuple).replace('\t', ',') + "\n");
+        }
+        bw.close();
+        File dat = File.createTempFile("pax", ".dat");
+        dat.deleteOnExit();
+        FreeSpaceMap.fileFor(dat).deleteOnExit();
+        HeapFileEncoder.convertPax(txt, dat, BufferPool.getPageSize(), 4, Utility.getTypes(4), ',');
+        pf = new PaxHeapFile(dat, Utility.getTupleDesc(4));
+        Database.getCatalog().addTable(pf, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        rows.close();
+        pf.close();
+    }
+
+    /**
+     * Each PAX page holds the same tuples, in the same slots, as the
+     * row-major page, with the values grouped by column
+     */
+    @Test
+    public void sameTuplesAsHeapPage() throws Exception {
+        assertEquals(rows.numPages(), pf.numPages());
+        for (int p = 0; p < pf.numPages(); p++) {
+            HeapPage hp = (HeapPage) rows.readPage(new HeapPageId(rows.getId(), p));
+            PaxHeapPage pp = (PaxHeapPage) pf.readPage(new HeapPageId(pf.getId(), p));
+            assertArrayEquals(pp.getPageData(), PaxHeapPage.fromHeapPageData(hp.getPageData(), pf.getTupleDesc()));
+            Iterator<Tuple> it = pp.iterator();
+            Iterator<Tuple> expected = hp.iterator();
+            while (expected.hasNext()) {
+                Tuple e = expected.next();
+                Tuple t = it.next();
+                assertEquals(e.getRecordId().tupleno(), t.getRecordId().tupleno());
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(e.getField(i), t.getField(i));
+                    assertEquals(((IntField) e.getField(i)).getValue(), pp.getInt(t.getRecordId().tupleno(), i));
+                }
+            }
+            assertFalse(it.hasNext());
+        }
+        SystemTestUtil.matchTuples(pf, tuples);
+    }
+
+    @Test
+    public void insertAndDelete() throws Exception {
+        PaxHeapPage page = (PaxHeapPage) pf.readPage(new HeapPageId(pf.getId(), pf.numPages() - 1));
+        int empty = page.getNumEmptySlots();
+        Tuple t = Utility.getHeapTuple(new int[]{1, 2, 3, 4});
+        page.insertTuple(t);
+        assertEquals(empty - 1, page.getNumEmptySlots());
+        int slot = t.getRecordId().tupleno();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, page.getInt(slot, i));
+        }
+
+        page.deleteTuple(t);
+        assertEquals(empty, page.getNumEmptySlots());
+        assertFalse(page.isSlotUsed(slot));
+        assertEquals(new IntField(3), t.getField(2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapFileTest.class);
+    }
+}
@@ -0,0 +1,171 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 1000;
+
+    private TupleDesc td;
+    private File txt;
+    private SlottedHeapFile sf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test: a table of (int, name)
+     * rows with short names, converted to slotted pages.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(types(), new String[]{"id", "name"});
+        txt = File.createTempFile("slotted", ".txt");
+        txt.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(txt));
+        for (int i = 0; i < ROWS; i++) {
+            bw.write(i + "," + name(i) + "\n");
+        }
+        bw.close();
+
+        File dat = File.createTempFile("slotted", ".dat");
+        dat.deleteOnExit();
+        FreeSpaceMap.fileFor(dat).deleteOnExit();
+        HeapFileEncoder.convertSlotted(txt, dat, BufferPool.getPageSize(), 2, types(), ',');
+        sf = new SlottedHeapFile(dat, td);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        sf.close();
+    }
+
+    private static Type[] types() {
+        return new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+    }
+
+    private static String name(int i) {
+        return "name" + (i * 7919 % 100000);
+    }
+
+    private static Tuple tuple(TupleDesc td, int id, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private ArrayList<Tuple> scan() throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        it.close();
+        return result;
+    }
+
+    /**
+     * The encoded file holds every row, in far fewer pages than a HeapFile
+     */
+    @Test
+    public void encodeAndScan() throws Exception {
+        ArrayList<Tuple> tuples = scan();
+        assertEquals(ROWS, tuples.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(new IntField(i), tuples.get(i).getField(0));
+            assertEquals(new StringField(name(i), Type.STRING_LEN), tuples.get(i).getField(1));
+        }
+
+        File fixed = File.createTempFile("fixed", ".dat");
+        fixed.deleteOnExit();
+        HeapFileEncoder.convert(txt, fixed, BufferPool.getPageSize(), 2, types(), ',');
+        long fixedPages = fixed.length() / BufferPool.getPageSize();
+        assertTrue(sf.numPages() * 5 < fixedPages);
+    }
+
+    /**
+     * Deleting a record compacts the page without disturbing the other
+     * records or their RecordIds, and the space is reused by an insert
+     */
+    @Test
+    public void deleteCompactsPage() throws Exception {
+        SlottedHeapPage page = (SlottedHeapPage) sf.readPage(new HeapPageId(sf.getId(), 0));
+        int free = page.getFreeSpace();
+        ArrayList<Tuple> before = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            before.add(it.next());
+        }
+
+        Tuple victim = before.get(5);
+        RecordId victimRid = victim.getRecordId();
+        page.deleteTuple(victim);
+        assertNull(victim.getRecordId());
+        assertEquals(new StringField(name(5), Type.STRING_LEN), victim.getField(1));
+        assertTrue(page.getFreeSpace() > free);
+        assertFalse(page.isSlotUsed(5));
+
+        it = page.iterator();
+        for (Tuple t : before) {
+            if (t == victim) {
+                continue;
+            }
+            Tuple u = it.next();
+            assertEquals(t.getRecordId(), u.getRecordId());
+            assertEquals(t.getField(1), u.getField(1));
+        }
+        assertFalse(it.hasNext());
+
+        Tuple t = tuple(td, -1, "x");
+        page.insertTuple(t);
+        assertEquals(victimRid, t.getRecordId());
+        // round trip through the page image
+        SlottedHeapPage copy = new SlottedHeapPage(page.getId(), page.getPageData());
+        assertTrue(copy.isSlotUsed(5));
+        assertEquals(new StringField("x", Type.STRING_LEN), copy.readField(5, 1));
+    }
+
+    /**
+     * Inserts through the file find room by free bytes and grow the file
+     */
+    @Test
+    public void insertTuple() throws Exception {
+        int pages = sf.numPages();
+        for (int i = 0; i < 2000; i++) {
+            sf.insertTuple(tid, tuple(td, ROWS + i, name(i)));
+        }
+        assertTrue(sf.numPages() > pages);
+        assertTrue(sf.numPages() < pages * 4);
+
+        try {
+            sf.insertTuple(tid, tuple(Utility.getTupleDesc(2), 0, "bad"));
+            fail("expected DbException for a mismatched TupleDesc");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
@@ -219,6 +219,11 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+                throws DbException, IOException, TransactionAbortedException {
+            throw new RuntimeException("not implemented");
+        }
+
         public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
                 throws DbException, TransactionAbortedException {
             throw new RuntimeException("not implemented");
@@ -408,6 +413,7 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            FreeSpaceMap.fileFor(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
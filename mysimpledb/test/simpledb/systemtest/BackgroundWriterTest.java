@@ -0,0 +1,100 @@
+package simpledb.systemtest;
+
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Once more than the high watermark of the buffer pool is dirty, the
+ * background writer logs and writes dirty pages until no more than the low
+ * watermark is.
+ */
+public class BackgroundWriterTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 40;
+    private static final int ROWS_PER_PAGE = 504;
+    private static final int TABLE_PAGES = 20;
+
+    private HeapFile table;
+    private BufferPool pool;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        table = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * ROWS_PER_PAGE, null, null);
+        pool = Database.resetBufferPool(POOL_PAGES);
+        pool.setDirtyWatermarks(0.1, 0.25);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Deletes the first tuple of each of the first n pages of the table
+     * through the buffer pool.
+     */
+    private void dirtyPages(int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE);
+            Iterator<Tuple> it = p.iterator();
+            pool.deleteTuple(tid, it.next());
+        }
+    }
+
+    /**
+     * Returns the number of pages whose first tuple has been deleted on
+     * disk.
+     */
+    private int pagesWritten() {
+        int written = 0;
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            HeapPage p = (HeapPage) table.readPage(new HeapPageId(table.getId(), i));
+            if (p.getNumEmptySlots() > 0) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    @Test
+    public void writesDownToLowWatermark() throws Exception {
+        int records = Database.getLogFile().getTotalRecords();
+        dirtyPages(TABLE_PAGES);
+        // pages count as clean once copied for writing, a little before
+        // they reach the disk
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((pool.getNumDirtyPages() > 0.1 * POOL_PAGES
+                || pagesWritten() < TABLE_PAGES - pool.getNumDirtyPages())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        int dirty = pool.getNumDirtyPages();
+        assertTrue(dirty <= 0.1 * POOL_PAGES);
+        int written = TABLE_PAGES - dirty;
+        assertEquals(written, pagesWritten());
+        // an UPDATE record per page written
+        assertTrue(Database.getLogFile().getTotalRecords() - records >= written);
+
+        pool.flushAllPages();
+        assertEquals(0, pool.getNumDirtyPages());
+        assertEquals(TABLE_PAGES, pagesWritten());
+    }
+
+    @Test
+    public void idleBelowHighWatermark() throws Exception {
+        dirtyPages(8);
+        Thread.sleep(200);
+        assertEquals(8, pool.getNumDirtyPages());
+        assertEquals(0, pagesWritten());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BackgroundWriterTest.class);
+    }
+}
@@ -0,0 +1,52 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import simpledb.*;
+
+/**
+ * Reports the Java heap used by a full buffer pool with page images on the
+ * heap and in off-heap frames, and the time of a full garbage collection
+ * with the pool populated.  Not run as part of the test suite; invoke main
+ * directly, with room for the on-heap pool and the direct frames, e.g.:
+ * <p/>
+ * java -Xmx2g -XX:MaxDirectMemorySize=1g -cp bin/src:bin/test simpledb.systemtest.BufferPoolHeapBenchmark [pages]
+ */
+public class BufferPoolHeapBenchmark {
+
+    // the pool being measured, kept reachable through the measurement
+    private static BufferPool pool;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        File f = File.createTempFile("pool", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.getPageSize());
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        measure(hf, numPages, true);
+        measure(hf, numPages, false);
+        hf.close();
+    }
+
+    private static void measure(HeapFile hf, int numPages, boolean offHeap) throws Exception {
+        TransactionId tid = new TransactionId();
+        long before = SystemTestUtil.getMemoryFootprint();
+        pool = new BufferPool(numPages, new LruEvictionPolicy(), offHeap);
+        long start = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+            pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+        }
+        double loadMs = (System.nanoTime() - start) / 1e6;
+        long after = SystemTestUtil.getMemoryFootprint();
+        start = System.nanoTime();
+        System.gc();
+        double gcMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-8s %d pages: heap %6d MB, load %7.1f ms, full GC %6.1f ms%n",
+                offHeap ? "off-heap" : "on-heap", numPages, (after - before) >> 20, loadMs, gcMs);
+        pool = null;
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the latency of a BufferPool.getPage hit for growing pool sizes.
+ * Every page of the table is cached first, so every lookup is a hit; with
+ * the hashed page table the time per hit should stay flat as numPages
+ * grows.  Not run as part of the test suite; invoke main directly (the
+ * largest pools need a heap of about 4 KB per page, e.g. -Xmx512m):
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.BufferPoolHitBenchmark [maxPages] [lookups]
+ */
+public class BufferPoolHitBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxPages = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+
+        // a table of empty pages is enough: only the lookup is measured
+        File f = File.createTempFile("pool", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) maxPages * BufferPool.getPageSize());
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        TransactionId tid = new TransactionId();
+
+        for (int numPages = 64; numPages <= maxPages; numPages *= 4) {
+            BufferPool pool = Database.resetBufferPool(numPages);
+            HeapPageId[] pids = new HeapPageId[numPages];
+            for (int i = 0; i < numPages; i++) {
+                pids[i] = new HeapPageId(hf.getId(), i);
+                pool.getPage(tid, pids[i], Permissions.READ_ONLY);
+            }
+            int[] order = new int[lookups];
+            Random r = new Random(numPages);
+            for (int i = 0; i < lookups; i++) {
+                order[i] = r.nextInt(numPages);
+            }
+            // warm up, then measure
+            for (int i = 0; i < lookups; i++) {
+                pool.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                pool.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("numPages %6d: %7.1f ns per hit%n", numPages, (double) elapsed / lookups);
+        }
+        hf.close();
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb.systemtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * The buffer pool counts hits, misses, evictions and flushes, times its
+ * I/O, and publishes all of it through JMX.
+ */
+public class BufferPoolMetricsTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    private static void read(BufferPool pool, HeapFile table, int from, int to) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 20 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(10);
+        read(pool, table, 0, 10);
+        read(pool, table, 0, 10);
+        read(pool, table, 10, 15);
+        assertEquals(15, pool.getMissCount());
+        assertEquals(10, pool.getHitCount());
+        assertEquals(5, pool.getEvictionCount());
+        assertEquals(15, pool.getReadLatency().getCount());
+        assertEquals(10, pool.getNumCachedPages());
+        assertEquals(Integer.valueOf(10), pool.getCachedPagesByTable().get(table.getId()));
+
+        BufferPoolMetrics metrics = new BufferPoolMetrics(pool);
+        assertEquals(10.0 / 25, metrics.getHitRatio(), 1e-9);
+        long reads = 0;
+        for (long n : metrics.getReadLatencyHistogram()) {
+            reads += n;
+        }
+        assertEquals(15, reads);
+        assertTrue(pool.getReadLatency().getQuantileMicros(0.99) >= pool.getReadLatency().getQuantileMicros(0.5));
+
+        pool.resetCounters();
+        assertEquals(0, pool.getHitCount());
+        assertEquals(0, pool.getMissCount());
+        assertEquals(0, pool.getEvictionCount());
+        assertEquals(0, pool.getReadLatency().getCount());
+    }
+
+    @Test
+    public void countsFlushesAndPins() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 4 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(10);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4; i++) {
+            HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE);
+            Iterator<Tuple> it = p.iterator();
+            pool.deleteTuple(tid, it.next());
+        }
+        pool.flushAllPages();
+        assertEquals(4, pool.getFlushCount());
+        assertTrue(pool.getWriteLatency().getCount() >= 1);
+
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+        pool.pinPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(1, pool.getNumPinnedPages());
+        pool.unpinPage(pid);
+        assertEquals(0, pool.getNumPinnedPages());
+    }
+
+    @Test
+    public void publishedThroughJmx() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3 * ROWS_PER_PAGE, null, null);
+        String name = Database.getCatalog().getTableName(table.getId());
+        BufferPool pool = Database.resetBufferPool(10);
+        BufferPoolMetrics.register();
+        // registering again is harmless
+        BufferPoolMetrics.register();
+        read(pool, table, 0, 3);
+        read(pool, table, 0, 3);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = new ObjectName(BufferPoolMetrics.OBJECT_NAME);
+        assertEquals(3L, server.getAttribute(on, "Hits"));
+        assertEquals(3L, server.getAttribute(on, "Misses"));
+        assertEquals(10, server.getAttribute(on, "MaxPages"));
+        TabularData byTable = (TabularData) server.getAttribute(on, "CachedPagesByTable");
+        assertEquals(3, byTable.get(new Object[]{name}).get("value"));
+        server.invoke(on, "resetCounters", null, null);
+        assertEquals(0L, server.getAttribute(on, "Hits"));
+    }
+}
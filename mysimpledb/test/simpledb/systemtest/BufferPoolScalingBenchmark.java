@@ -0,0 +1,102 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures read-only getPage throughput of a shared BufferPool from 1 to
+ * maxThreads threads.  Every page of the table is cached first, so every
+ * lookup is a hit; with lock-free hits throughput should grow about
+ * linearly with the threads until they outnumber the cores.  For
+ * comparison each run is repeated with every lookup made under one global
+ * lock, as when the whole pool was synchronized.  Not run as part of the
+ * test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.BufferPoolScalingBenchmark [maxThreads] [pages] [lookups per thread]
+ */
+public class BufferPoolScalingBenchmark {
+
+    private static final Object GLOBAL_LOCK = new Object();
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int numPages = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+
+        // a table of empty pages is enough: only the lookup is measured
+        File f = File.createTempFile("pool", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.getPageSize());
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        BufferPool pool = Database.resetBufferPool(numPages);
+        HeapPageId[] pids = new HeapPageId[numPages];
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < numPages; i++) {
+            pids[i] = new HeapPageId(hf.getId(), i);
+            pool.getPage(tid, pids[i], Permissions.READ_ONLY);
+        }
+
+        System.out.printf("%d cores, %d cached pages, %d lookups per thread%n",
+                Runtime.getRuntime().availableProcessors(), numPages, lookups);
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            run(pool, pids, 2, lookups, false);
+            run(pool, pids, 2, lookups, true);
+        }
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double striped = run(pool, pids, threads, lookups, false);
+            double global = run(pool, pids, threads, lookups, true);
+            if (threads == 1) {
+                base = striped;
+            }
+            System.out.printf("%2d threads: %12.0f hits/s (%5.2fx), global lock %12.0f hits/s%n",
+                    threads, striped, striped / base, global);
+        }
+        hf.close();
+    }
+
+    /**
+     * Runs threads threads doing lookups random hits each and returns the
+     * total number of hits per second.
+     */
+    private static double run(final BufferPool pool, final HeapPageId[] pids, int threads,
+                              final int lookups, final boolean globalLock) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Random r = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int i = 0; i < lookups; i++) {
+                            HeapPageId pid = pids[r.nextInt(pids.length)];
+                            if (globalLock) {
+                                synchronized (GLOBAL_LOCK) {
+                                    pool.getPage(tid, pid, Permissions.READ_ONLY);
+                                }
+                            } else {
+                                pool.getPage(tid, pid, Permissions.READ_ONLY);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        return (double) threads * lookups / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb.systemtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares HeapFileEncoder with ParallelHeapFileEncoder on a generated
+ * comma-separated file of (int, int, string, int) rows, reporting rows/s
+ * for each and checking that they wrote the same bytes.  Not run as part
+ * of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.BulkLoadBenchmark [rows] [threads]
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        File txt = File.createTempFile("bulk", ".txt");
+        txt.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(txt));
+        Random r = new Random(0);
+        for (int i = 0; i < rows; i++) {
+            bw.write(i + "," + r.nextInt() + ",name" + r.nextInt(100000) + "," + r.nextInt(1000) + "\n");
+        }
+        bw.close();
+        Type[] types = new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE};
+        System.out.printf("BulkLoadBenchmark: %d rows, %d MB of text, %d threads%n",
+                rows, txt.length() >> 20, threads);
+
+        File legacy = File.createTempFile("legacy", ".dat");
+        legacy.deleteOnExit();
+        File parallel = File.createTempFile("parallel", ".dat");
+        parallel.deleteOnExit();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            HeapFileEncoder.convert(txt, legacy, BufferPool.getPageSize(), 4, types, ',');
+            double legacySecs = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            ParallelHeapFileEncoder.convert(txt, parallel, BufferPool.getPageSize(), 4, types, ',',
+                    threads, ParallelHeapFileEncoder.BLOCK_SIZE);
+            double parallelSecs = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("round %d: HeapFileEncoder %9.0f rows/s, ParallelHeapFileEncoder %9.0f rows/s%n",
+                    round, rows / legacySecs, rows / parallelSecs);
+        }
+        System.out.println(sameContents(legacy, parallel) ? "outputs identical" : "OUTPUTS DIFFER");
+    }
+
+    private static boolean sameContents(File a, File b) throws Exception {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        DataInputStream ia = new DataInputStream(new BufferedInputStream(new FileInputStream(a)));
+        DataInputStream ib = new DataInputStream(new BufferedInputStream(new FileInputStream(b)));
+        byte[] ba = new byte[1 << 16];
+        byte[] bb = new byte[1 << 16];
+        boolean same = true;
+        for (long left = a.length(); same && left > 0; left -= ba.length) {
+            int n = (int) Math.min(ba.length, left);
+            ia.readFully(ba, 0, n);
+            ib.readFully(bb, 0, n);
+            same = Arrays.equals(ba, bb);
+        }
+        ia.close();
+        ib.close();
+        return same;
+    }
+}
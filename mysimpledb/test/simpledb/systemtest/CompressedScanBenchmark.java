@@ -0,0 +1,65 @@
+package simpledb.systemtest;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+
+/**
+ * Compares the disk footprint of a table of (int, short string) rows
+ * stored as a HeapFile and as a CompressedHeapFile, and the time to read
+ * every page of each.  Reads are served from the OS cache, so the timings
+ * show the CPU cost of inflating pages; the bytes read show the I/O a cold
+ * scan would save.  Not run as part of the test suite; invoke main
+ * directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.CompressedScanBenchmark [rows]
+ */
+public class CompressedScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        File txt = File.createTempFile("bench", ".txt");
+        txt.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(txt));
+        for (int i = 0; i < rows; i++) {
+            bw.write(i + ",customer" + (i * 7919 % 100000) + "\n");
+        }
+        bw.close();
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        TupleDesc td = new TupleDesc(types);
+
+        File plainFile = File.createTempFile("plain", ".dat");
+        plainFile.deleteOnExit();
+        HeapFileEncoder.convert(txt, plainFile, BufferPool.getPageSize(), 2, types, ',');
+        File compressedFile = File.createTempFile("compressed", ".dat");
+        compressedFile.deleteOnExit();
+        CompressedHeapFile.indexFileFor(compressedFile).deleteOnExit();
+        CompressedHeapFile.compress(plainFile, compressedFile, BufferPool.getPageSize());
+
+        HeapFile plain = new HeapFile(plainFile, td);
+        CompressedHeapFile compressed = new CompressedHeapFile(compressedFile, td);
+        Database.getCatalog().addTable(plain, "plain");
+        Database.getCatalog().addTable(compressed, "compressed");
+        System.out.printf("%d rows, %d pages: heap file %d KB, compressed %d KB (%.1fx)%n",
+                rows, plain.numPages(), plainFile.length() / 1024, compressed.sizeOnDisk() / 1024,
+                (double) plainFile.length() / compressed.sizeOnDisk());
+
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("round %d: read all pages: heap file %6.1f ms, compressed %6.1f ms%n",
+                    round, readAll(plain), readAll(compressed));
+        }
+        plain.close();
+        compressed.close();
+    }
+
+    private static double readAll(HeapFile f) {
+        long start = System.nanoTime();
+        for (int i = 0; i < f.numPages(); i++) {
+            f.readPage(new HeapPageId(f.getId(), i));
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,135 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Threads sharing a buffer pool much smaller than their working set always
+ * get the page they asked for, with its contents intact, while pages are
+ * evicted and read in again under them.  Pages read into off-heap frames
+ * are pinned while they are read, so their frames are not reused under the
+ * readers; on-heap page images stay valid whatever happens to their frames.
+ */
+public class ConcurrentBufferPoolTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+    private static final int TABLE_PAGES = 40;
+    private static final int THREADS = 8;
+    private static final int LOOKUPS = 3000;
+
+    private void readConcurrently(int poolPages, boolean offHeap) throws Exception {
+        readConcurrently(poolPages, offHeap, false);
+    }
+
+    /**
+     * If resize is true, another thread keeps growing the pool to the size
+     * of the table and shrinking it back while the readers run.
+     */
+    private void readConcurrently(final int poolPages, final boolean offHeap, boolean resize) throws Exception {
+        final ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, TABLE_PAGES * ROWS_PER_PAGE, 1000, null, expected);
+        final HeapFile table = Utility.openHeapFile(2, f);
+        final BufferPool pool = new BufferPool(poolPages, new LruEvictionPolicy(), offHeap);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final Random r = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        TransactionId tid = new TransactionId();
+                        for (int i = 0; i < LOOKUPS && failure.get() == null; i++) {
+                            int pgNo = r.nextInt(TABLE_PAGES);
+                            HeapPageId pid = new HeapPageId(table.getId(), pgNo);
+                            Page p = offHeap ? pool.pinPage(tid, pid, Permissions.READ_ONLY)
+                                    : pool.getPage(tid, pid, Permissions.READ_ONLY);
+                            try {
+                                assertEquals(pgNo, p.getId().pageNumber());
+                                Iterator<Tuple> it = ((HeapPage) p).iterator();
+                                int row = pgNo * ROWS_PER_PAGE;
+                                for (int k = 0; k < 3; k++, row++) {
+                                    assertEquals(expected.get(row), SystemTestUtil.tupleToList(it.next()));
+                                }
+                            } finally {
+                                if (offHeap) {
+                                    pool.unpinPage(pid);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        Thread resizer = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; failure.get() == null; i++) {
+                        pool.setMaxPages(i % 2 == 0 ? TABLE_PAGES : poolPages);
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    // readers done
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        if (resize) {
+            resizer.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        resizer.interrupt();
+        resizer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void readsWhileEvicting() throws Exception {
+        readConcurrently(TABLE_PAGES / 4, false);
+    }
+
+    @Test
+    public void pinnedReadsWhileEvicting() throws Exception {
+        readConcurrently(TABLE_PAGES / 4, true);
+    }
+
+    /**
+     * Fewer frames than threads: misses must wait for frames rather than
+     * fail while all of them are being read into, written out or pinned
+     */
+    @Test
+    public void fewerFramesThanThreads() throws Exception {
+        readConcurrently(THREADS / 2, false);
+        readConcurrently(THREADS / 2, true);
+    }
+
+    @Test
+    public void readsWhileResizing() throws Exception {
+        readConcurrently(TABLE_PAGES / 4, false, true);
+        readConcurrently(TABLE_PAGES / 4, true, true);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ConcurrentBufferPoolTest.class);
+    }
+}
@@ -0,0 +1,113 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+
+/**
+ * Runs threads of short update transactions, each locking a few random
+ * pages of a small table exclusively in random order, so that deadlocks
+ * are frequent.  Aborted transactions are retried.  Each run is made once
+ * with deadlock detection and once relying on a lock timeout alone, and
+ * reports commits and aborts per second and the wasted work: the fraction
+ * of thread time spent in transactions that were aborted, including the
+ * time they waited for locks.  Not run as part of the test suite; invoke
+ * main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.DeadlockBenchmark [threads] [pages] [locks per transaction] [seconds] [timeout ms]
+ */
+public class DeadlockBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int numPages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int locksPerTxn = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        long timeout = args.length > 4 ? Long.parseLong(args[4]) : 500;
+
+        File f = File.createTempFile("deadlock", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.getPageSize());
+        raf.close();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        HeapPageId[] pids = new HeapPageId[numPages];
+        for (int i = 0; i < numPages; i++) {
+            pids[i] = new HeapPageId(hf.getId(), i);
+        }
+
+        System.out.printf("%d threads, %d pages, %d locks per transaction, %d s per run%n",
+                threads, numPages, locksPerTxn, seconds);
+        run("detection", pids, threads, locksPerTxn, seconds, true, 0);
+        run(String.format("timeout %d ms", timeout), pids, threads, locksPerTxn, seconds, false, timeout);
+        hf.close();
+    }
+
+    private static void run(String name, final HeapPageId[] pids, int threads, final int locksPerTxn,
+                            int seconds, boolean detect, long timeout) throws InterruptedException {
+        final BufferPool pool = Database.resetBufferPool(pids.length);
+        pool.getLockManager().setDeadlockDetection(detect);
+        pool.getLockManager().setLockTimeout(timeout);
+        final AtomicLong commits = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final AtomicLong wastedNanos = new AtomicLong();
+        final long end = System.nanoTime() + seconds * 1000000000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Random r = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.nanoTime() < end) {
+                            TransactionId tid = new TransactionId();
+                            long start = System.nanoTime();
+                            try {
+                                for (int i = 0; i < locksPerTxn; i++) {
+                                    pool.getPage(tid, pids[r.nextInt(pids.length)], Permissions.READ_WRITE);
+                                    work();
+                                }
+                                pool.transactionComplete(tid, true);
+                                commits.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                pool.transactionComplete(tid, false);
+                                aborts.incrementAndGet();
+                                wastedNanos.addAndGet(System.nanoTime() - start);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-16s %10.0f commits/s %8.1f aborts/s  %5.1f%% of thread time wasted  (%d deadlocks found)%n",
+                name, commits.get() / elapsed, aborts.get() / elapsed,
+                100 * wastedNanos.get() / 1e9 / (elapsed * threads),
+                pool.getLockManager().getDeadlockCount());
+    }
+
+    private static volatile long sink;
+
+    /**
+     * Simulates the work done on a locked page, about a microsecond.
+     */
+    private static void work() {
+        long x = sink;
+        for (int i = 0; i < 200; i++) {
+            x = x * 31 + i;
+        }
+        sink = x;
+    }
+}
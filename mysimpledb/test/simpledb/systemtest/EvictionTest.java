@@ -1,17 +1,26 @@
 package simpledb.systemtest;
 
+import java.io.File;
 import java.io.IOException;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import simpledb.BufferPool;
 import simpledb.Database;
 import simpledb.DbException;
 import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+import simpledb.Page;
+import simpledb.Permissions;
 import simpledb.SeqScan;
 import simpledb.TransactionAbortedException;
 import simpledb.TransactionId;
+import simpledb.Tuple;
+import simpledb.TupleDesc;
+import simpledb.Utility;
 
 /**
  * Creates a heap file with 1024*500 tuples with two integer fields each.  Clears the buffer pool,
@@ -22,6 +31,26 @@ import simpledb.TransactionId;
 public class EvictionTest extends SimpleDbTestBase {
     private static final long MEMORY_LIMIT_IN_MB = 5;
     private static final int BUFFER_PAGES = 16;
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Fails every page write while failWrites is set.
+     */
+    private static class FailingHeapFile extends HeapFile {
+        volatile boolean failWrites;
+
+        FailingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public void writePage(Page page) throws IOException {
+            if (failWrites) {
+                throw new IOException("disk full");
+            }
+            super.writePage(page);
+        }
+    }
 
     @Test
     public void testHeapFileScanWithManyPages() throws IOException, DbException, TransactionAbortedException {
@@ -44,6 +73,44 @@ public class EvictionTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * A dirty page that cannot be written when it is evicted stays in the
+     * pool, dirty, and is written by the next flush that succeeds.
+     */
+    @Test
+    public void failedEvictionKeepsPage() throws Exception {
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 4 * BUFFER_PAGES * ROWS_PER_PAGE, 1000, null, null);
+        FailingHeapFile table = new FailingHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(table.getId(), 0);
+        HeapPage p = (HeapPage) pool.getPage(tid, first, Permissions.READ_WRITE);
+        Tuple victim = p.iterator().next();
+        pool.deleteTuple(tid, victim);
+
+        table.failWrites = true;
+        boolean failed = false;
+        for (int i = 1; i < table.numPages() && !failed; i++) {
+            try {
+                pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+            } catch (DbException e) {
+                failed = true;
+            }
+        }
+        Assert.assertTrue(failed);
+        Assert.assertEquals(1, pool.getNumDirtyPages());
+        p = (HeapPage) pool.getPage(tid, first, Permissions.READ_ONLY);
+        Assert.assertEquals(1, p.getNumEmptySlots());
+        Assert.assertEquals(0, ((HeapPage) table.readPage(first)).getNumEmptySlots());
+
+        table.failWrites = false;
+        pool.flushAllPages();
+        Assert.assertEquals(0, pool.getNumDirtyPages());
+        Assert.assertEquals(1, ((HeapPage) table.readPage(first)).getNumEmptySlots());
+        pool.transactionComplete(tid);
+    }
+
     /**
      * Make test compatible with older version of ant.
      */
@@ -0,0 +1,51 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Measures insert throughput as a table grows.  With the free-space map an
+ * insert goes straight to the page with room, so the time per batch should
+ * stay flat instead of growing with the number of pages.  With "batch" as
+ * the third argument, each batch is inserted with a single
+ * BufferPool.insertTuples call instead of one insertTuple per tuple.  Not
+ * run as part of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.HeapFileInsertBenchmark [batches] [batchSize] [batch]
+ */
+public class HeapFileInsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int batches = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        boolean batch = args.length > 2 && args[2].equals("batch");
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        File f = File.createTempFile("insert", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getPath(), 2);
+        TransactionId tid = new TransactionId();
+
+        for (int b = 0; b < batches; b++) {
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                tuples.add(Utility.getHeapTuple(i, 2));
+            }
+            long start = System.nanoTime();
+            if (batch) {
+                Database.getBufferPool().insertTuples(tid, hf.getId(), tuples.iterator());
+            } else {
+                for (Tuple t : tuples) {
+                    Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("batch %2d: %6d pages, %10.0f inserts/s%n",
+                    b, hf.numPages(), batchSize / (elapsed / 1e9));
+        }
+        hf.close();
+    }
+}
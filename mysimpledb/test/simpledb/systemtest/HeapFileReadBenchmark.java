@@ -0,0 +1,111 @@
+package simpledb.systemtest;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares random page-read latency of HeapFile.readPage, which uses a
+ * long-lived FileChannel and positional reads, against the old
+ * open/skip/read/close stream path.  Not run as part of the test suite;
+ * invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.HeapFileReadBenchmark [pages] [reads]
+ */
+public class HeapFileReadBenchmark {
+
+    private static final int COLUMNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        int rowsPerPage = (BufferPool.getPageSize() * 8) / (COLUMNS * Type.INT_TYPE.getLen() * 8 + 1);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, pages * rowsPerPage,
+                1 << 16, null, null);
+        HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+        System.out.println("HeapFileReadBenchmark: " + hf.numPages() + " pages, " + reads + " random reads");
+
+        int[] pageNos = new int[reads];
+        Random r = new Random(42);
+        for (int i = 0; i < reads; i++) {
+            pageNos[i] = r.nextInt(hf.numPages());
+        }
+
+        // warm up all paths (JIT, OS page cache)
+        runStream(hf, pageNos, false);
+        runStream(hf, pageNos, true);
+        runChannel(hf, pageNos, false);
+        runChannel(hf, pageNos, true);
+
+        System.out.println("raw page I/O:");
+        report("stream (open/skip/read)", runStream(hf, pageNos, false));
+        report("channel (positional)", runChannel(hf, pageNos, false));
+        System.out.println("page I/O + HeapPage construction:");
+        report("stream (open/skip/read)", runStream(hf, pageNos, true));
+        report("channel (HeapFile.readPage)", runChannel(hf, pageNos, true));
+        hf.close();
+    }
+
+    private static long[] runStream(HeapFile hf, int[] pageNos, boolean parse) throws IOException {
+        long[] nanos = new long[pageNos.length];
+        for (int i = 0; i < pageNos.length; i++) {
+            long start = System.nanoTime();
+            InputStream input = new BufferedInputStream(new FileInputStream(hf.getFile()));
+            byte[] data = new byte[BufferPool.getPageSize()];
+            input.skip((long) BufferPool.getPageSize() * pageNos[i]);
+            input.read(data);
+            input.close();
+            if (parse) {
+                new HeapPage(new HeapPageId(hf.getId(), pageNos[i]), data);
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static long[] runChannel(HeapFile hf, int[] pageNos, boolean parse) throws IOException {
+        long[] nanos = new long[pageNos.length];
+        if (parse) {
+            for (int i = 0; i < pageNos.length; i++) {
+                long start = System.nanoTime();
+                hf.readPage(new HeapPageId(hf.getId(), pageNos[i]));
+                nanos[i] = System.nanoTime() - start;
+            }
+            return nanos;
+        }
+        // same access pattern HeapFile uses, minus the page construction
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r");
+        FileChannel ch = raf.getChannel();
+        for (int i = 0; i < pageNos.length; i++) {
+            long start = System.nanoTime();
+            ByteBuffer data = ByteBuffer.allocate(BufferPool.getPageSize());
+            ch.read(data, (long) BufferPool.getPageSize() * pageNos[i]);
+            nanos[i] = System.nanoTime() - start;
+        }
+        raf.close();
+        return nanos;
+    }
+
+    private static void report(String name, long[] nanos) {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-28s mean %8.2f us  p50 %8.2f us  p99 %8.2f us%n", name,
+                total / 1000.0 / nanos.length,
+                sorted[sorted.length / 2] / 1000.0,
+                sorted[(int) (sorted.length * 0.99)] / 1000.0);
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import simpledb.*;
+
+/**
+ * Measures what decoding HeapPages costs a scan that only looks at one
+ * column: the heap retained per resident page (in the spirit of
+ * EvictionTest's memory check) and the time to run an int predicate over
+ * every tuple.  Not run as part of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.HeapPageScanBenchmark [pages] [columns]
+ */
+public class HeapPageScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        int rowsPerPage = (BufferPool.getPageSize() * 8) / (columns * Type.INT_TYPE.getLen() * 8 + 1);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(columns, pages * rowsPerPage,
+                1 << 16, null, null);
+        HeapFile hf = Utility.openHeapFile(columns, f);
+        System.out.println("HeapPageScanBenchmark: " + hf.numPages() + " pages, " + columns + " int columns");
+
+        // retained heap per page once the pages have been scanned
+        long before = SystemTestUtil.getMemoryFootprint();
+        ArrayList<HeapPage> resident = new ArrayList<HeapPage>();
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            scan(page);
+            resident.add(page);
+        }
+        long after = SystemTestUtil.getMemoryFootprint();
+        System.out.printf("retained heap per scanned page: %8.1f KB%n",
+                (after - before) / 1024.0 / resident.size());
+        resident.clear();
+
+        // time to read and filter every page
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int matches = 0;
+            for (int i = 0; i < hf.numPages(); i++) {
+                matches += scan((HeapPage) hf.readPage(new HeapPageId(hf.getId(), i)));
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("round %d: read+filter %8.2f us/page (%d matches)%n",
+                    round, elapsed / 1000.0 / hf.numPages(), matches);
+        }
+        hf.close();
+    }
+
+    /**
+     * Counts the tuples on page whose first field is below a fixed constant,
+     * the way Filter evaluates a single-column Predicate.
+     */
+    private static int scan(HeapPage page) {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(1 << 10));
+        int matches = 0;
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            if (p.filter(it.next())) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb.systemtest;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+
+/**
+ * Measures the throughput of short update transactions while full table
+ * scans run alongside them.  Each update rewrites one tuple of a random
+ * page in place; aborted updates are retried.  The scans run either as
+ * ordinary transactions under two-phase locking, holding a shared lock on
+ * every page until they complete, or as read-only transactions reading a
+ * snapshot without locks.  A run with no scans gives the baseline.  Not run
+ * as part of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.MixedWorkloadBenchmark [writers] [scanners] [pages] [seconds]
+ */
+public class MixedWorkloadBenchmark {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int scanners = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int numPages = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, numPages * ROWS_PER_PAGE, null, null);
+        System.out.printf("%d writers, %d scanners, %d pages, %d s per run%n", writers, scanners, numPages, seconds);
+        run("no scans", table, numPages, writers, 0, false, seconds);
+        run("locking scans", table, numPages, writers, scanners, false, seconds);
+        run("snapshot scans", table, numPages, writers, scanners, true, seconds);
+    }
+
+    private static void run(String name, final HeapFile table, final int numPages, int writers, int scanners,
+                            final boolean snapshot, int seconds) throws InterruptedException {
+        final BufferPool pool = Database.resetBufferPool(numPages + 16);
+        final AtomicLong commits = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final AtomicLong scans = new AtomicLong();
+        final long end = System.nanoTime() + seconds * 1000000000L;
+
+        Thread[] threads = new Thread[writers + scanners];
+        for (int t = 0; t < writers; t++) {
+            final Random r = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.nanoTime() < end) {
+                            TransactionId tid = new TransactionId();
+                            try {
+                                update(pool, tid, new HeapPageId(table.getId(), r.nextInt(numPages)));
+                                pool.transactionComplete(tid, true);
+                                commits.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                pool.transactionComplete(tid, false);
+                                aborts.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        for (int t = writers; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.nanoTime() < end) {
+                            TransactionId tid = new TransactionId();
+                            if (snapshot) {
+                                pool.beginSnapshot(tid);
+                            }
+                            try {
+                                scan(tid, table);
+                                scans.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                aborts.incrementAndGet();
+                            } finally {
+                                pool.transactionComplete(tid, true);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-15s %10.0f updates/s %8.1f scans/s %8.1f aborts/s%n",
+                name, commits.get() / elapsed, scans.get() / elapsed, aborts.get() / elapsed);
+    }
+
+    /**
+     * Deletes the first tuple of pid and puts it back, on behalf of tid.
+     */
+    private static void update(BufferPool pool, TransactionId tid, HeapPageId pid) throws Exception {
+        HeapPage p = (HeapPage) pool.getPage(tid, pid, Permissions.READ_WRITE);
+        Iterator<Tuple> it = p.iterator();
+        Tuple t = it.next();
+        Tuple copy = new Tuple(t.getTupleDesc());
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        pool.deleteTuple(tid, t);
+        p.insertTuple(copy);
+    }
+
+    private static void scan(TransactionId tid, HeapFile table) throws Exception {
+        SeqScan scan = new SeqScan(tid, table.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+        }
+        scan.close();
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Pages read into off-heap frames stay correct for their holders when the
+ * frames are reused for other pages.
+ */
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+
+    /**
+     * Tuples handed out by a scan keep their values after the frames of
+     * their pages have been reused many times
+     */
+    @Test
+    public void tuplesOutliveFrames() throws Exception {
+        Database.resetBufferPool(4, new LruEvictionPolicy());
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20 * 504, null, expected);
+
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        ArrayList<Tuple> held = new ArrayList<Tuple>();
+        scan.open();
+        while (scan.hasNext()) {
+            held.add(scan.next());
+        }
+        scan.close();
+
+        assertEquals(expected.size(), held.size());
+        for (int i = 0; i < held.size(); i++) {
+            assertEquals(expected.get(i), SystemTestUtil.tupleToList(held.get(i)));
+        }
+    }
+
+    /**
+     * A page just past the end of a file reads as empty even in a frame
+     * that held another page, and the page that held the frame before
+     * stays readable
+     */
+    @Test
+    public void pastEndReadsEmpty() throws Exception {
+        BufferPool pool = Database.resetBufferPool(1, new LruEvictionPolicy());
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+        TransactionId tid = new TransactionId();
+        TuplePage first = (TuplePage) pool.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        assertTrue(first.iterator().hasNext());
+        TuplePage pastEnd = (TuplePage) pool.getPage(tid, new HeapPageId(f.getId(), 1), Permissions.READ_ONLY);
+        assertFalse(pastEnd.iterator().hasNext());
+
+        // first had an iterator handed out, so it kept a copy of its image
+        int count = 0;
+        for (Iterator<Tuple> it = first.iterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        assertEquals(504, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+    }
+}
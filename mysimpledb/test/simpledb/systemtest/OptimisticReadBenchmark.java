@@ -0,0 +1,153 @@
+package simpledb.systemtest;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the latency of short lookup transactions, each reading one
+ * field of a random page, while writer threads keep updating random pages.
+ * Each run is made once with lookups reading their page under a shared
+ * lock (getPage, then transactionComplete) and once reading it
+ * optimistically (readOptimistic), and reports the median and 99th
+ * percentile lookup latency and how often optimistic reads fell back to
+ * locking.  Not run as part of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.OptimisticReadBenchmark [readers] [writers] [pages] [lookups per reader]
+ */
+public class OptimisticReadBenchmark {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Reads the first field of the first tuple of a page.
+     */
+    private static final PageReader<Integer> FIRST_VALUE = new PageReader<Integer>() {
+        public Integer read(Page p) {
+            Iterator<Tuple> it = ((HeapPage) p).iterator();
+            return ((IntField) it.next().getField(0)).getValue();
+        }
+    };
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int numPages = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int lookups = args.length > 3 ? Integer.parseInt(args[3]) : 200000;
+
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, numPages * ROWS_PER_PAGE, null, null);
+        System.out.printf("%d readers, %d writers, %d pages, %d lookups per reader%n",
+                readers, writers, numPages, lookups);
+        // warm up
+        run("", table, numPages, readers, writers, lookups / 4, false);
+        run("", table, numPages, readers, writers, lookups / 4, true);
+        run("locked", table, numPages, readers, writers, lookups, false);
+        run("optimistic", table, numPages, readers, writers, lookups, true);
+    }
+
+    private static void run(String name, final HeapFile table, final int numPages, int readers, int writers,
+                            final int lookups, final boolean optimistic) throws InterruptedException {
+        final BufferPool pool = Database.resetBufferPool(numPages + 16);
+        final long[][] latencies = new long[readers][lookups];
+        final boolean[] done = new boolean[1];
+
+        Thread[] writerThreads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            final Random r = new Random(1000 + t);
+            writerThreads[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (!done[0]) {
+                            TransactionId tid = new TransactionId();
+                            try {
+                                update(pool, tid, new HeapPageId(table.getId(), r.nextInt(numPages)));
+                                pool.transactionComplete(tid, true);
+                            } catch (TransactionAbortedException e) {
+                                pool.transactionComplete(tid, false);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        Thread[] readerThreads = new Thread[readers];
+        for (int t = 0; t < readers; t++) {
+            final Random r = new Random(t);
+            final long[] mine = latencies[t];
+            readerThreads[t] = new Thread() {
+                public void run() {
+                    try {
+                        long sum = 0;
+                        for (int i = 0; i < lookups; i++) {
+                            HeapPageId pid = new HeapPageId(table.getId(), r.nextInt(numPages));
+                            long start = System.nanoTime();
+                            TransactionId tid = new TransactionId();
+                            try {
+                                if (optimistic) {
+                                    sum += pool.readOptimistic(tid, pid, FIRST_VALUE);
+                                } else {
+                                    sum += FIRST_VALUE.read(pool.getPage(tid, pid, Permissions.READ_ONLY));
+                                }
+                            } catch (TransactionAbortedException e) {
+                                // counted with its wait, like a retried lookup
+                            }
+                            pool.transactionComplete(tid);
+                            mine[i] = System.nanoTime() - start;
+                        }
+                        sink = sum;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        for (Thread t : writerThreads) {
+            t.start();
+        }
+        long start = System.nanoTime();
+        for (Thread t : readerThreads) {
+            t.start();
+        }
+        for (Thread t : readerThreads) {
+            t.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        done[0] = true;
+        for (Thread t : writerThreads) {
+            t.join();
+        }
+        if (name.length() == 0) {
+            return;
+        }
+
+        long[] all = new long[readers * lookups];
+        for (int t = 0; t < readers; t++) {
+            System.arraycopy(latencies[t], 0, all, t * lookups, lookups);
+        }
+        Arrays.sort(all);
+        System.out.printf("%-10s p50 %7.2f us  p99 %8.2f us  p99.9 %8.2f us  %10.0f lookups/s  %d fallbacks%n",
+                name, all[all.length / 2] / 1e3, all[(int) (all.length * 0.99)] / 1e3,
+                all[(int) (all.length * 0.999)] / 1e3, all.length / elapsed, pool.getOptimisticFallbackCount());
+    }
+
+    /**
+     * Deletes the first tuple of pid and puts it back, on behalf of tid.
+     */
+    private static void update(BufferPool pool, TransactionId tid, HeapPageId pid) throws Exception {
+        HeapPage p = (HeapPage) pool.getPage(tid, pid, Permissions.READ_WRITE);
+        Iterator<Tuple> it = p.iterator();
+        Tuple t = it.next();
+        Tuple copy = new Tuple(t.getTupleDesc());
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        pool.deleteTuple(tid, t);
+        p.insertTuple(copy);
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.systemtest;
+
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Short lookups read pages without locks, retrying when a writer got at the
+ * page and taking a lock when one holds it.
+ */
+public class OptimisticReadTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    private HeapFile table;
+    private BufferPool pool;
+    private HeapPageId pid;
+
+    /**
+     * Reads the first field of the first tuple of a page.
+     */
+    private static class FirstValue implements PageReader<Integer> {
+        int calls;
+
+        public Integer read(Page p) {
+            calls++;
+            Iterator<Tuple> it = ((HeapPage) p).iterator();
+            return ((IntField) it.next().getField(0)).getValue();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        table = SystemTestUtil.createRandomHeapFile(2, 2 * ROWS_PER_PAGE, null, null);
+        pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.getLockManager().setLockTimeout(200);
+        pid = new HeapPageId(table.getId(), 0);
+    }
+
+    private int firstValue() throws Exception {
+        return new FirstValue().read(pool.getPage(null, pid, Permissions.READ_ONLY));
+    }
+
+    @Test
+    public void readsWithoutLock() throws Exception {
+        TransactionId tid = new TransactionId();
+        int value = pool.readOptimistic(tid, pid, new FirstValue());
+        assertEquals(firstValue(), value);
+        assertFalse(pool.holdsLock(tid, pid));
+        assertEquals(1, pool.getOptimisticReadCount());
+        assertEquals(0, pool.getOptimisticFallbackCount());
+    }
+
+    @Test
+    public void retriesWhenWriterGetsIn() throws Exception {
+        final TransactionId writer = new TransactionId();
+        FirstValue reader = new FirstValue() {
+            public Integer read(Page p) {
+                Integer value = super.read(p);
+                if (calls == 1) {
+                    // a writer locks and releases the page mid-read
+                    try {
+                        pool.getPage(writer, pid, Permissions.READ_WRITE);
+                        pool.transactionComplete(writer);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return value;
+            }
+        };
+        pool.readOptimistic(new TransactionId(), pid, reader);
+        assertEquals(2, reader.calls);
+        assertEquals(1, pool.getOptimisticReadCount());
+    }
+
+    @Test
+    public void locksWhenWriterHoldsPage() throws Exception {
+        TransactionId writer = new TransactionId();
+        pool.getPage(writer, pid, Permissions.READ_WRITE);
+        try {
+            pool.readOptimistic(new TransactionId(), pid, new FirstValue());
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // the reader waited for the writer's lock
+        }
+        assertEquals(1, pool.getOptimisticFallbackCount());
+        pool.transactionComplete(writer);
+        TransactionId tid = new TransactionId();
+        assertEquals(firstValue(), (int) pool.readOptimistic(tid, pid, new FirstValue()));
+    }
+}
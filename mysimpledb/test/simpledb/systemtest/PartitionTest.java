@@ -0,0 +1,114 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Tables with a buffer pool partition of their own are kept cached if
+ * resident, and fill no more than their quota of the pool.
+ */
+public class PartitionTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Counts the number of readPage operations.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages) throws IOException {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * ROWS_PER_PAGE, 1000, null, null);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private static void read(BufferPool pool, HeapFile table, int from, int to) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    @Test
+    public void residentTableSurvivesLargeReads() throws Exception {
+        CountingHeapFile dim = createTable(3);
+        CountingHeapFile fact = createTable(30);
+        BufferPool pool = Database.resetBufferPool(10);
+        BufferPartition partition = pool.setTablePartition(dim.getId(), 1.0, true);
+        read(pool, dim, 0, 3);
+        read(pool, fact, 0, 30);
+        dim.reads = 0;
+        read(pool, dim, 0, 3);
+        assertEquals(0, dim.reads);
+        assertEquals(3, partition.getNumPages());
+        assertEquals(3, partition.getMisses());
+        assertEquals(3, partition.getHits());
+        assertEquals(0.5, partition.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void quotaCapsTable() throws Exception {
+        CountingHeapFile small = createTable(10);
+        CountingHeapFile fact = createTable(30);
+        BufferPool pool = Database.resetBufferPool(20);
+        BufferPartition partition = pool.setTablePartition(fact.getId(), 0.3, false);
+        read(pool, small, 0, 10);
+        read(pool, fact, 0, 30);
+        assertEquals(6, partition.getNumPages());
+        assertEquals(10, pool.getDefaultPartition().getNumPages());
+        small.reads = 0;
+        read(pool, small, 0, 10);
+        assertEquals(0, small.reads);
+        // the fact table's most recent pages are cached
+        fact.reads = 0;
+        read(pool, fact, 24, 30);
+        assertEquals(0, fact.reads);
+    }
+
+    @Test
+    public void cachedPagesMoveToNewPartition() throws Exception {
+        CountingHeapFile dim = createTable(3);
+        CountingHeapFile fact = createTable(30);
+        BufferPool pool = Database.resetBufferPool(10);
+        read(pool, dim, 0, 3);
+        assertEquals(3, pool.getDefaultPartition().getNumPages());
+        BufferPartition partition = pool.setTablePartition(dim.getId(), 1.0, true);
+        assertSame(partition, pool.getPartition(dim.getId()));
+        assertEquals(3, partition.getNumPages());
+        assertEquals(0, pool.getDefaultPartition().getNumPages());
+        read(pool, fact, 0, 30);
+        dim.reads = 0;
+        read(pool, dim, 0, 3);
+        assertEquals(0, dim.reads);
+
+        pool.clearTablePartition(dim.getId());
+        assertSame(pool.getDefaultPartition(), pool.getPartition(dim.getId()));
+        read(pool, fact, 0, 30);
+        read(pool, dim, 0, 3);
+        assertEquals(3, dim.reads);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidQuota() throws Exception {
+        Database.getBufferPool().setTablePartition(1, 0, false);
+    }
+}
@@ -0,0 +1,87 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.Iterator;
+
+import simpledb.*;
+
+/**
+ * Compares the CPU cost of filtering on one int column of a wide table
+ * stored as HeapPages and as PaxHeapPages.  The page images are read once
+ * and kept in memory, so only page construction and the scan are timed.
+ * Not run as part of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.PaxScanBenchmark [pages] [columns]
+ */
+public class PaxScanBenchmark {
+
+    private static final Predicate PREDICATE = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(1 << 10));
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        int rowsPerPage = (BufferPool.getPageSize() * 8) / (columns * Type.INT_TYPE.getLen() * 8 + 1);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(columns, pages * rowsPerPage,
+                1 << 16, null, null);
+        HeapFile hf = Utility.openHeapFile(columns, f);
+        int n = hf.numPages();
+        byte[][] rowImages = new byte[n][];
+        byte[][] paxImages = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            rowImages[i] = hf.readPage(new HeapPageId(hf.getId(), i)).getPageData();
+            paxImages[i] = PaxHeapPage.fromHeapPageData(rowImages[i], hf.getTupleDesc());
+        }
+        System.out.println("PaxScanBenchmark: " + n + " pages, " + columns + " int columns");
+
+        // pages are rebuilt from their images every round so that no round
+        // sees fields decoded by an earlier one
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            int rowMatches = 0;
+            for (int i = 0; i < n; i++) {
+                rowMatches += filter(new HeapPage(new HeapPageId(hf.getId(), i), rowImages[i]).iterator());
+            }
+            long row = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int paxMatches = 0;
+            for (int i = 0; i < n; i++) {
+                paxMatches += filter(new PaxHeapPage(new HeapPageId(hf.getId(), i), paxImages[i]).iterator());
+            }
+            long pax = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int loopMatches = 0;
+            for (int i = 0; i < n; i++) {
+                loopMatches += filterColumn(new PaxHeapPage(new HeapPageId(hf.getId(), i), paxImages[i]), rowsPerPage);
+            }
+            long loop = System.nanoTime() - start;
+
+            System.out.printf("round %d: us/page heap %6.2f  pax %6.2f  pax column loop %6.2f (%d/%d/%d matches)%n",
+                    round, row / 1000.0 / n, pax / 1000.0 / n, loop / 1000.0 / n,
+                    rowMatches, paxMatches, loopMatches);
+        }
+        hf.close();
+    }
+
+    private static int filter(Iterator<Tuple> it) {
+        int matches = 0;
+        while (it.hasNext()) {
+            if (PREDICATE.filter(it.next())) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static int filterColumn(PaxHeapPage page, int slots) {
+        int matches = 0;
+        for (int s = 0; s < slots; s++) {
+            if (page.isSlotUsed(s) && page.getInt(s, 0) < (1 << 10)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,196 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Pinned pages stay in the buffer pool until they are unpinned, and
+ * HeapFile iterators pin only the page they are on.
+ */
+public class PinTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 10;
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Counts the number of readPage operations, and of pages written while
+     * not pinned in the buffer pool.  Fails writes while failWrites is set.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+        int unpinnedWrites;
+        boolean failWrites;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public void writePage(Page page) throws IOException {
+            if (Database.getBufferPool().getPinCount(page.getId()) == 0) {
+                unpinnedWrites++;
+            }
+            if (failWrites) {
+                throw new IOException("disk full");
+            }
+            super.writePage(page);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages) throws IOException {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * ROWS_PER_PAGE, 1000, null, null);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    @Test
+    public void pinnedPagesAreNotEvicted() throws Exception {
+        CountingHeapFile table = createTable(5 * POOL_PAGES);
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(table.getId(), 0);
+        Page pinned = pool.pinPage(tid, first, Permissions.READ_ONLY);
+        assertSame(pinned, pool.pinPage(tid, first, Permissions.READ_ONLY));
+        assertEquals(2, pool.getPinCount(first));
+
+        for (int i = 1; i < table.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        table.reads = 0;
+        assertSame(pinned, pool.getPage(tid, first, Permissions.READ_ONLY));
+        assertEquals(0, table.reads);
+
+        pool.unpinPage(first);
+        pool.unpinPage(first);
+        assertEquals(0, pool.getPinCount(first));
+        for (int i = 1; i < table.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(0, pool.getPinCount(first));
+        pool.getPage(tid, first, Permissions.READ_ONLY);
+        assertEquals(table.numPages(), table.reads);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unpinWithoutPin() throws Exception {
+        CountingHeapFile table = createTable(1);
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+        Database.getBufferPool().getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+        Database.getBufferPool().unpinPage(pid);
+    }
+
+    /**
+     * A scan holds a pin on the page it is on only, and none once closed
+     */
+    @Test
+    public void iteratorPinsCurrentPage() throws Exception {
+        CountingHeapFile table = createTable(3);
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        DbFileIterator it = table.iterator(new TransactionId());
+        it.open();
+        for (int i = 0; i < 3 * ROWS_PER_PAGE; i++) {
+            it.next();
+            int page = i / ROWS_PER_PAGE;
+            for (int j = 0; j < 3; j++) {
+                assertEquals(j == page ? 1 : 0, pool.getPinCount(new HeapPageId(table.getId(), j)));
+            }
+        }
+        it.close();
+        for (int j = 0; j < 3; j++) {
+            assertEquals(0, pool.getPinCount(new HeapPageId(table.getId(), j)));
+        }
+    }
+
+    /**
+     * Rewinding a scan still on its first page reads nothing again, even
+     * when the pool cannot hold the page otherwise
+     */
+    @Test
+    public void rewindOnFirstPage() throws Exception {
+        CountingHeapFile table = createTable(1);
+        CountingHeapFile other = createTable(5 * POOL_PAGES);
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        for (int round = 0; round < 3; round++) {
+            int n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            assertEquals(ROWS_PER_PAGE, n);
+            for (int i = 0; i < other.numPages(); i++) {
+                pool.getPage(tid, new HeapPageId(other.getId(), i), Permissions.READ_ONLY);
+            }
+            it.rewind();
+        }
+        it.close();
+        assertEquals(1, table.reads);
+    }
+
+    /**
+     * A flush keeps the pages it writes pinned until they are on disk, and
+     * if it fails leaves them dirty and unpinned
+     */
+    @Test
+    public void flushPinsPagesUntilWritten() throws Exception {
+        CountingHeapFile table = createTable(6);
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        // only the flushes below write
+        pool.setDirtyWatermarks(1, 1);
+        TransactionId tid = new TransactionId();
+        // every other page, so that each is written by itself
+        for (int i = 0; i < 6; i += 2) {
+            HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE);
+            pool.deleteTuple(tid, p.iterator().next());
+        }
+        assertEquals(3, pool.getNumDirtyPages());
+
+        table.failWrites = true;
+        try {
+            pool.flushAllPages();
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(3, pool.getNumDirtyPages());
+        for (int i = 0; i < 6; i++) {
+            HeapPageId pid = new HeapPageId(table.getId(), i);
+            assertEquals(0, pool.getPinCount(pid));
+            assertEquals(i % 2 == 0 ? 1 : 0,
+                    ((HeapPage) pool.getPage(tid, pid, Permissions.READ_ONLY)).getNumEmptySlots());
+        }
+
+        table.failWrites = false;
+        pool.flushAllPages();
+        assertEquals(0, pool.getNumDirtyPages());
+        assertEquals(0, table.unpinnedWrites);
+        for (int i = 0; i < 6; i += 2) {
+            HeapPageId pid = new HeapPageId(table.getId(), i);
+            assertEquals(0, pool.getPinCount(pid));
+            assertEquals(1, ((HeapPage) table.readPage(pid)).getNumEmptySlots());
+        }
+        pool.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PinTest.class);
+    }
+}
@@ -0,0 +1,129 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * A buffer pool resized while in use keeps its pages when it grows, and
+ * evicts only the surplus, writing dirty pages out, when it shrinks.
+ */
+public class ResizeTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Counts the number of readPage operations.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages) throws IOException {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * ROWS_PER_PAGE, 1000, null, null);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private static void read(BufferPool pool, HeapFile table, int from, int to) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    @Test
+    public void growKeepsPages() throws Exception {
+        CountingHeapFile table = createTable(20);
+        BufferPool pool = Database.resetBufferPool(10);
+        read(pool, table, 0, 10);
+        pool.setMaxPages(20);
+        assertEquals(20, pool.getMaxPages());
+        read(pool, table, 10, 20);
+        table.reads = 0;
+        read(pool, table, 0, 20);
+        assertEquals(0, table.reads);
+    }
+
+    @Test
+    public void shrinkEvictsLeastRecentlyUsed() throws Exception {
+        CountingHeapFile table = createTable(20);
+        BufferPool pool = Database.resetBufferPool(20);
+        read(pool, table, 0, 20);
+        pool.setMaxPages(5);
+        table.reads = 0;
+        read(pool, table, 15, 20);
+        assertEquals(0, table.reads);
+        read(pool, table, 10, 15);
+        assertEquals(5, table.reads);
+        // the pool holds 5 pages: 15-19 were evicted
+        read(pool, table, 15, 20);
+        assertEquals(10, table.reads);
+    }
+
+    @Test
+    public void shrinkWritesDirtyPages() throws Exception {
+        CountingHeapFile table = createTable(10);
+        BufferPool pool = Database.resetBufferPool(10);
+        pool.setDirtyWatermarks(0, 1);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 10; i++) {
+            HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE);
+            Iterator<Tuple> it = p.iterator();
+            pool.deleteTuple(tid, it.next());
+        }
+        assertEquals(10, pool.getNumDirtyPages());
+        pool.setMaxPages(2);
+        assertEquals(2, pool.getNumDirtyPages());
+        for (int i = 0; i < 8; i++) {
+            HeapPage p = (HeapPage) table.readPage(new HeapPageId(table.getId(), i));
+            assertEquals(1, p.getNumEmptySlots());
+        }
+    }
+
+    /**
+     * Pages pinned while the pool shrinks stay until they are unpinned, and
+     * leave on the next miss after that.
+     */
+    @Test
+    public void pinnedPagesLeaveAfterUnpin() throws Exception {
+        CountingHeapFile table = createTable(10);
+        BufferPool pool = Database.resetBufferPool(10);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3; i++) {
+            pool.pinPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        read(pool, table, 3, 10);
+        pool.setMaxPages(1);
+        table.reads = 0;
+        read(pool, table, 0, 3);
+        assertEquals(0, table.reads);
+
+        for (int i = 0; i < 3; i++) {
+            pool.unpinPage(new HeapPageId(table.getId(), i));
+        }
+        read(pool, table, 5, 6);
+        table.reads = 0;
+        read(pool, table, 5, 6);
+        assertEquals(0, table.reads);
+        read(pool, table, 0, 3);
+        assertEquals(3, table.reads);
+    }
+}
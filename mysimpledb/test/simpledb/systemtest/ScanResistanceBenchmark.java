@@ -0,0 +1,91 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Runs point lookups on a small hot table while a reporting scan reads a
+ * table many times the size of the buffer pool, and reports the hit rate
+ * of the lookups under each eviction policy, and under LRU with the scan
+ * reading through a ScanRing.  Lookups and scan pages are
+ * interleaved in one thread so that runs are repeatable.  Not run as part
+ * of the test suite; invoke main directly:
+ * <p/>
+ * java -cp bin/src:bin/test simpledb.systemtest.ScanResistanceBenchmark [poolPages] [scans]
+ */
+public class ScanResistanceBenchmark {
+
+    /**
+     * Counts the pages read from disk.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int scans = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int hotPages = poolPages / 2;
+        int scanPages = 10 * poolPages;
+
+        CountingHeapFile hot = createTable(hotPages);
+        CountingHeapFile report = createTable(scanPages);
+        TransactionId tid = new TransactionId();
+        System.out.printf("pool %d pages, hot table %d pages, %d scans of %d pages%n",
+                poolPages, hotPages, scans, scanPages);
+
+        EvictionPolicy[] policies = {new LruEvictionPolicy(), new ClockEvictionPolicy(),
+                new TwoQueueEvictionPolicy(), new ArcEvictionPolicy()};
+        for (int run = 0; run <= policies.length; run++) {
+            boolean useRing = run == policies.length;
+            EvictionPolicy policy = useRing ? new LruEvictionPolicy() : policies[run];
+            BufferPool pool = Database.resetBufferPool(poolPages, policy);
+            ScanRing ring = useRing ? pool.getScanRing(scanPages) : null;
+            Random r = new Random(0);
+            for (int i = 0; i < 10 * hotPages; i++) {
+                pool.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(hotPages)), Permissions.READ_ONLY);
+            }
+            hot.reads = 0;
+            int lookups = 0;
+            long start = System.nanoTime();
+            for (int s = 0; s < scans; s++) {
+                for (int pg = 0; pg < scanPages; pg++) {
+                    pool.getPage(tid, new HeapPageId(report.getId(), pg), Permissions.READ_ONLY, ring);
+                    if (pg % 4 == 0) {
+                        pool.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(hotPages)), Permissions.READ_ONLY);
+                        lookups++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-35s lookup hit rate %5.1f%%, %6.0f ns per page access%n",
+                    policy.getClass().getSimpleName() + (useRing ? " + ScanRing" : ""), 100.0 * (lookups - hot.reads) / lookups,
+                    (double) elapsed / (scans * scanPages + lookups));
+        }
+        hot.close();
+        report.close();
+    }
+
+    private static CountingHeapFile createTable(int pages) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) pages * BufferPool.getPageSize());
+        raf.close();
+        CountingHeapFile hf = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+}
@@ -0,0 +1,119 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Scans of tables larger than the buffer pool read through a ScanRing and
+ * leave the rest of the pool cached.
+ */
+public class ScanRingTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 40;
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Counts the number of readPage operations.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages, ArrayList<ArrayList<Integer>> tuples)
+            throws IOException {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * ROWS_PER_PAGE, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    /**
+     * Reads every page of table through the buffer pool and returns the
+     * number of pages read from disk.
+     */
+    private int touch(CountingHeapFile table) throws Exception {
+        table.reads = 0;
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < table.numPages(); i++) {
+            Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        return table.reads;
+    }
+
+    @Test
+    public void largeScanKeepsWorkingSet() throws Exception {
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        CountingHeapFile hot = createTable(POOL_PAGES / 2, null);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CountingHeapFile big = createTable(3 * POOL_PAGES, tuples);
+        assertNotNull(pool.getScanRing(big.numPages()));
+        assertNull(pool.getScanRing(hot.numPages()));
+
+        assertEquals(POOL_PAGES / 2, touch(hot));
+        SystemTestUtil.matchTuples(big, tuples);
+        assertEquals(3 * POOL_PAGES, big.reads);
+        assertEquals(0, touch(hot));
+    }
+
+    @Test
+    public void threshold() throws Exception {
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        CountingHeapFile hot = createTable(POOL_PAGES / 2, null);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CountingHeapFile big = createTable(3 * POOL_PAGES, tuples);
+
+        // with rings off the scan pushes the hot table out
+        pool.setRingThreshold(10);
+        assertNull(pool.getScanRing(big.numPages()));
+        assertEquals(POOL_PAGES / 2, touch(hot));
+        SystemTestUtil.matchTuples(big, tuples);
+        assertEquals(POOL_PAGES / 2, touch(hot));
+
+        // a low threshold puts even tables that fit the pool in rings
+        pool.setRingThreshold(0.25);
+        assertNotNull(pool.getScanRing(hot.numPages()));
+    }
+
+    /**
+     * A ring page requested without the ring, e.g. to update it, stays in
+     * the pool after the scan moves on
+     */
+    @Test
+    public void ringPageAdopted() throws Exception {
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        CountingHeapFile big = createTable(3 * POOL_PAGES, null);
+        TransactionId tid = new TransactionId();
+        ScanRing ring = pool.getScanRing(big.numPages());
+        HeapPageId first = new HeapPageId(big.getId(), 0);
+        Page p = pool.getPage(tid, first, Permissions.READ_ONLY, ring);
+        assertSame(p, pool.getPage(tid, first, Permissions.READ_WRITE));
+        for (int i = 1; i < big.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(big.getId(), i), Permissions.READ_ONLY, ring);
+        }
+        assertSame(p, pool.getPage(tid, first, Permissions.READ_ONLY));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
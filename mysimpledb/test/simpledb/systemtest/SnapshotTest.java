@@ -0,0 +1,119 @@
+package simpledb.systemtest;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Read-only transactions read a snapshot as of their start without taking
+ * locks, whatever writers do meanwhile.
+ */
+public class SnapshotTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    private static int count(TransactionId tid, HeapFile table) throws Exception {
+        SeqScan scan = new SeqScan(tid, table.getId(), "");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /**
+     * Deletes n tuples of page pageNo on behalf of tid.
+     */
+    private static void delete(BufferPool pool, TransactionId tid, HeapFile table, int pageNo, int n)
+            throws Exception {
+        HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_WRITE);
+        Iterator<Tuple> it = p.iterator();
+        for (int i = 0; i < n; i++) {
+            pool.deleteTuple(tid, it.next());
+        }
+    }
+
+    @Test
+    public void snapshotIgnoresLaterCommits() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Transaction reader = new Transaction(true);
+        reader.start();
+
+        TransactionId writer = new TransactionId();
+        delete(pool, writer, table, 0, 10);
+        assertEquals(3 * ROWS_PER_PAGE, count(reader.getId(), table));
+        pool.transactionComplete(writer, true);
+        assertEquals(3 * ROWS_PER_PAGE, count(reader.getId(), table));
+        assertTrue(pool.getNumVersions() > 0);
+
+        Transaction later = new Transaction(true);
+        later.start();
+        assertEquals(3 * ROWS_PER_PAGE - 10, count(later.getId(), table));
+
+        reader.commit();
+        later.commit();
+        // no snapshot needs the old version any more
+        assertEquals(0, pool.getNumVersions());
+        assertEquals(3 * ROWS_PER_PAGE - 10, count(new TransactionId(), table));
+    }
+
+    @Test
+    public void readersAndWritersDoNotBlock() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 2 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.getLockManager().setLockTimeout(200);
+        TransactionId writer = new TransactionId();
+        delete(pool, writer, table, 0, 5);
+
+        // the writer's exclusive lock does not hold up the reader
+        Transaction reader = new Transaction(true);
+        reader.start();
+        assertEquals(2 * ROWS_PER_PAGE, count(reader.getId(), table));
+        HeapPageId pid = new HeapPageId(table.getId(), 1);
+        assertFalse(pool.holdsLock(reader.getId(), pid));
+
+        // and pages the reader read can be written at once
+        delete(pool, writer, table, 1, 5);
+        pool.transactionComplete(writer, true);
+        assertEquals(2 * ROWS_PER_PAGE, count(reader.getId(), table));
+        reader.commit();
+    }
+
+    @Test
+    public void evictedChangesStayInvisible() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(3);
+        // evictions only: the background writer pins the pages it writes
+        pool.setDirtyWatermarks(1, 1);
+        Transaction reader = new Transaction(true);
+        reader.start();
+        TransactionId writer = new TransactionId();
+        delete(pool, writer, table, 0, 20);
+        // push the changed page out of the pool
+        for (int i = 1; i < 10; i++) {
+            pool.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(1, pool.getNumVersions());
+        assertEquals(10 * ROWS_PER_PAGE, count(reader.getId(), table));
+
+        pool.transactionComplete(writer, false);
+        assertEquals(0, pool.getNumVersions());
+        reader.commit();
+    }
+
+    @Test(expected = DbException.class)
+    public void readOnlyCannotWrite() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Transaction reader = new Transaction(true);
+        reader.start();
+        Database.getBufferPool().getPage(reader.getId(), new HeapPageId(table.getId(), 0), Permissions.READ_WRITE);
+    }
+}
@@ -0,0 +1,114 @@
+package simpledb.systemtest;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * Completing a transaction writes the pages it changed on commit and rolls
+ * them back on abort, before its locks are released.
+ */
+public class TransactionCompleteTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+    private static final int TABLE_PAGES = 4;
+
+    /**
+     * Deletes the first tuple of each page of the table on behalf of tid.
+     */
+    private static void deleteFirstTuples(BufferPool pool, TransactionId tid, HeapFile table) throws Exception {
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE);
+            Iterator<Tuple> it = p.iterator();
+            pool.deleteTuple(tid, it.next());
+        }
+    }
+
+    private static int emptySlots(Page p) {
+        return ((HeapPage) p).getNumEmptySlots();
+    }
+
+    @Test
+    public void commitWritesPages() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.setDirtyWatermarks(1, 1);
+        TransactionId tid = new TransactionId();
+        deleteFirstTuples(pool, tid, table);
+        assertEquals(TABLE_PAGES, pool.getNumDirtyPages());
+
+        pool.transactionComplete(tid, true);
+        assertEquals(0, pool.getNumDirtyPages());
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            HeapPageId pid = new HeapPageId(table.getId(), i);
+            assertEquals(1, emptySlots(table.readPage(pid)));
+            assertFalse(pool.holdsLock(tid, pid));
+        }
+    }
+
+    @Test
+    public void abortRollsBackCachedPages() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.setDirtyWatermarks(1, 1);
+        TransactionId tid = new TransactionId();
+        deleteFirstTuples(pool, tid, table);
+
+        pool.transactionComplete(tid, false);
+        assertEquals(0, pool.getNumDirtyPages());
+        TransactionId other = new TransactionId();
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            HeapPageId pid = new HeapPageId(table.getId(), i);
+            assertFalse(pool.holdsLock(tid, pid));
+            assertEquals(0, emptySlots(pool.getPage(other, pid, Permissions.READ_ONLY)));
+            assertEquals(0, emptySlots(table.readPage(pid)));
+        }
+        pool.transactionComplete(other);
+    }
+
+    /**
+     * Changes written out before an abort, by a flush or an eviction, are
+     * rolled back on disk too, even if the page was read back in and
+     * changed again
+     */
+    @Test
+    public void abortRollsBackStolenPages() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10 * ROWS_PER_PAGE, null, null);
+        BufferPool pool = Database.resetBufferPool(3);
+        pool.setDirtyWatermarks(1, 1);
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(table.getId(), 0);
+        HeapPageId second = new HeapPageId(table.getId(), 1);
+        pool.deleteTuple(tid, ((HeapPage) pool.getPage(tid, first, Permissions.READ_WRITE)).iterator().next());
+        pool.deleteTuple(tid, ((HeapPage) pool.getPage(tid, second, Permissions.READ_WRITE)).iterator().next());
+        pool.flushAllPages();
+        // push both pages out, then change the second again
+        for (int i = 2; i < 10; i++) {
+            pool.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        HeapPage p = (HeapPage) pool.getPage(tid, second, Permissions.READ_WRITE);
+        assertEquals(1, p.getNumEmptySlots());
+        pool.deleteTuple(tid, p.iterator().next());
+        assertEquals(1, emptySlots(table.readPage(first)));
+
+        pool.transactionComplete(tid, false);
+        assertEquals(0, pool.getNumVersions());
+        TransactionId other = new TransactionId();
+        for (HeapPageId pid : new HeapPageId[]{first, second}) {
+            assertEquals(0, emptySlots(table.readPage(pid)));
+            assertEquals(0, emptySlots(pool.getPage(other, pid, Permissions.READ_ONLY)));
+        }
+        pool.transactionComplete(other);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TransactionCompleteTest.class);
+    }
+}
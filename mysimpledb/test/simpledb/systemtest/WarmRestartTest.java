@@ -0,0 +1,115 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import simpledb.*;
+
+/**
+ * A buffer pool restarted from a page set snapshot reads the saved pages
+ * back in before they are asked for.
+ */
+public class WarmRestartTest extends SimpleDbTestBase {
+
+    private static final int ROWS_PER_PAGE = 504;
+
+    /**
+     * Counts the number of readPage operations.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages) throws IOException {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * ROWS_PER_PAGE, 1000, null, null);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private static File snapshotFile() throws IOException {
+        File f = File.createTempFile("pageset", ".snap");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static void read(BufferPool pool, HeapFile table, int from, int to) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++) {
+            pool.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    @Test
+    public void restartReadsSavedPages() throws Exception {
+        CountingHeapFile table = createTable(20);
+        BufferPool pool = Database.resetBufferPool(30);
+        read(pool, table, 5, 15);
+        File snapshot = snapshotFile();
+        pool.savePageSet(snapshot);
+
+        pool = Database.resetBufferPool(30);
+        table.reads.set(0);
+        assertEquals(10, pool.prefetchPageSet(snapshot, 4));
+        pool.awaitPrefetch();
+        assertEquals(10, table.reads.get());
+        read(pool, table, 5, 15);
+        assertEquals(10, table.reads.get());
+    }
+
+    @Test
+    public void droppedTablesAreIgnored() throws Exception {
+        CountingHeapFile table = createTable(5);
+        BufferPool pool = Database.resetBufferPool(30);
+        read(pool, table, 0, 5);
+        File snapshot = snapshotFile();
+        pool.savePageSet(snapshot);
+
+        Database.getCatalog().clear();
+        CountingHeapFile other = createTable(5);
+        pool = Database.resetBufferPool(30);
+        assertEquals(0, pool.prefetchPageSet(snapshot, 4));
+        pool.awaitPrefetch();
+        assertEquals(0, other.reads.get());
+    }
+
+    /**
+     * A pool smaller than the saved page set is filled with the pages hit
+     * most often.
+     */
+    @Test
+    public void smallerPoolGetsHottestPages() throws Exception {
+        CountingHeapFile table = createTable(30);
+        BufferPool pool = Database.resetBufferPool(40);
+        read(pool, table, 0, 20);
+        for (int round = 0; round < 3; round++) {
+            read(pool, table, 10, 15);
+            // a miss passes the hits on
+            read(pool, table, 20 + round, 21 + round);
+        }
+        File snapshot = snapshotFile();
+        pool.savePageSet(snapshot);
+
+        pool = Database.resetBufferPool(5);
+        assertEquals(5, pool.prefetchPageSet(snapshot, 2));
+        pool.awaitPrefetch();
+        table.reads.set(0);
+        read(pool, table, 10, 15);
+        assertEquals(0, table.reads.get());
+    }
+}